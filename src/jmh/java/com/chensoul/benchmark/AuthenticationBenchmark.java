@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.security.google2fa.CustomAuthenticationProvider;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * {@link CustomAuthenticationProvider#authenticate} end to end against in-memory repositories, with the user
+ * details cache warm or evicted before every call.
+ * <p>
+ * BCrypt runs at strength 4 by default so the hash does not drown out everything else; use
+ * {@link PasswordEncoderBenchmark} for the hash itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuthenticationBenchmark {
+
+    @Param({"4"})
+    public int bcryptStrength;
+
+    @Param({"true", "false"})
+    public boolean userCached;
+
+    private LoginFixture fixture;
+    private UsernamePasswordAuthenticationToken userToken;
+
+    @Setup
+    public void setUp() {
+        fixture = new LoginFixture(bcryptStrength);
+        userToken = fixture.token(InMemoryRepositories.USER_EMAIL);
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        evictIfUncached(InMemoryRepositories.USER_EMAIL);
+        return fixture.authenticationProvider.authenticate(userToken);
+    }
+
+    /**
+     * A fresh token per step: codes are single use, so every login needs the next one. The aerogear code
+     * generation this adds is a few microseconds against a BCrypt hash.
+     */
+    @Benchmark
+    public Authentication authenticateWithTotp() {
+        evictIfUncached(InMemoryRepositories.TWO_FACTOR_EMAIL);
+        fixture.nextTotpStep();
+        return fixture.authenticationProvider.authenticate(fixture.token(InMemoryRepositories.TWO_FACTOR_EMAIL));
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        evictIfUncached(InMemoryRepositories.ADMIN_EMAIL);
+        return fixture.userDetailsService.loadUserByUsername(InMemoryRepositories.ADMIN_EMAIL);
+    }
+
+    private void evictIfUncached(final String email) {
+        if (!userCached) {
+            fixture.userCache.removeUserFromCache(email);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.persistence.model.User;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.jboss.aerogear.security.otp.Totp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * The pieces of the login path in isolation: authority resolution, TOTP verification, the IP block check and
+ * the success handler's target URL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AuthenticationComponentsBenchmark {
+
+    private LoginFixture fixture;
+    private Set<String> roleNames;
+    private Authentication userAuthentication;
+    private Authentication adminAuthentication;
+    private User twoFactorUser;
+    private String totpCode;
+
+    @Setup
+    public void setUp() {
+        fixture = new LoginFixture(4);
+        roleNames = Set.of("ROLE_USER", "ROLE_ADMIN");
+        userAuthentication = fixture.authenticationProvider.authenticate(fixture.token(InMemoryRepositories.USER_EMAIL));
+        adminAuthentication = fixture.authenticationProvider.authenticate(fixture.token(InMemoryRepositories.ADMIN_EMAIL));
+        twoFactorUser = fixture.repositories.users.get(InMemoryRepositories.TWO_FACTOR_EMAIL);
+        totpCode = fixture.totpCode();
+    }
+
+    @Benchmark
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return fixture.roleAuthorityRegistry.getAuthorities(roleNames);
+    }
+
+    /**
+     * The aerogear verification the provider used to do: decode the secret and set up the HMAC on every call.
+     */
+    @Benchmark
+    public boolean verifyTotpAerogear() {
+        return new Totp(fixture.totpSecret).verify(totpCode);
+    }
+
+    /**
+     * Matching only; consuming the step would make every call after the first a replay.
+     */
+    @Benchmark
+    public long verifyTotp() {
+        return fixture.totpVerifier.match(twoFactorUser, totpCode);
+    }
+
+    @Benchmark
+    public boolean isBlocked() {
+        return fixture.loginAttemptService.isBlocked();
+    }
+
+    @Benchmark
+    public String determineTargetUrlUser() {
+        return fixture.successHandler.determineTargetUrl(userAuthentication);
+    }
+
+    @Benchmark
+    public String determineTargetUrlAdmin() {
+        return fixture.successHandler.determineTargetUrl(adminAuthentication);
+    }
+}
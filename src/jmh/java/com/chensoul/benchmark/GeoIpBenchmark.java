@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.service.GeoIpService;
+import com.chensoul.service.GeoLocation;
+import com.chensoul.service.ReloadableDatabaseReader;
+import com.maxmind.db.CHMCache;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Country lookups as logins produce them: a Zipf-skewed mix over a population of public IPv4 clients, where
+ * regulars log in often and most addresses are seen once or twice. Compares the bare reader, the reader with a
+ * node cache, and {@link GeoIpService} with its result cache on top.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GeoIpBenchmark {
+
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"10000", "1000000"})
+    public int clients;
+
+    private DatabaseReader uncachedReader;
+    private DatabaseReader nodeCachedReader;
+    private GeoIpService geoIpService;
+    private byte[][] addresses;
+    private InetAddress[] inetAddresses;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        final File database = ResourceUtils.getFile("classpath:maxmind/GeoLite2-Country.mmdb");
+        uncachedReader = new DatabaseReader.Builder(database).build();
+        nodeCachedReader = new DatabaseReader.Builder(database).withCache(new CHMCache()).build();
+        final DatabaseReader serviceReader = new DatabaseReader.Builder(database).withCache(new CHMCache()).build();
+        // no City database bundled, so the service answers from the Country one
+        geoIpService = new GeoIpService(serviceReader, new ReloadableDatabaseReader("city", null, null, 64), 100_000, Duration.ofDays(1), new SimpleMeterRegistry());
+
+        final Random random = new Random(42);
+        final int[] population = new int[clients];
+        for (int i = 0; i < clients; i++) {
+            population[i] = publicAddress(random);
+        }
+        final double[] cumulative = zipf(clients, 1.1);
+        addresses = new byte[LOOKUPS][];
+        inetAddresses = new InetAddress[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            rank = rank < 0 ? -rank - 1 : rank;
+            final int ip = population[Math.min(rank, clients - 1)];
+            addresses[i] = new byte[]{(byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip};
+            inetAddresses[i] = InetAddress.getByAddress(addresses[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        uncachedReader.close();
+        nodeCachedReader.close();
+    }
+
+    @Benchmark
+    public Optional<?> uncached() throws IOException, GeoIp2Exception {
+        return uncachedReader.tryCountry(inetAddresses[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public Optional<?> nodeCache() throws IOException, GeoIp2Exception {
+        return nodeCachedReader.tryCountry(inetAddresses[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public GeoLocation resultCache() {
+        return geoIpService.locate(addresses[next++ & (LOOKUPS - 1)]);
+    }
+
+    private static int publicAddress(final Random random) {
+        while (true) {
+            final int ip = random.nextInt();
+            final int first = ip >>> 24;
+            if (first != 0 && first != 10 && first != 127 && first < 224) {
+                return ip;
+            }
+        }
+    }
+
+    private static double[] zipf(final int n, final double exponent) {
+        final double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
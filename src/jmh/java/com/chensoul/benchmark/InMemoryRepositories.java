@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.persistence.dao.RoleRepository;
+import com.chensoul.persistence.dao.UserAuthorityProjection;
+import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.persistence.model.Privilege;
+import com.chensoul.persistence.model.Role;
+import com.chensoul.persistence.model.User;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Repository stubs backed by plain maps, so benchmarks measure the authentication code rather than a database.
+ * Only the finder methods used on the login path are implemented.
+ */
+final class InMemoryRepositories {
+    static final String USER_EMAIL = "user@test.com";
+    static final String ADMIN_EMAIL = "admin@test.com";
+    static final String TWO_FACTOR_EMAIL = "2fa@test.com";
+
+    final Map<String, User> users = new HashMap<>();
+    final List<Role> roles = new ArrayList<>();
+
+    final UserRepository userRepository;
+    final RoleRepository roleRepository;
+
+    InMemoryRepositories(final String encodedPassword, final String totpSecret) {
+        final Privilege read = new Privilege("READ_PRIVILEGE");
+        final Privilege write = new Privilege("WRITE_PRIVILEGE");
+        final Privilege changePassword = new Privilege("CHANGE_PASSWORD_PRIVILEGE");
+        final Role admin = role("ROLE_ADMIN", read, write, changePassword);
+        final Role user = role("ROLE_USER", read, changePassword);
+
+        user(USER_EMAIL, encodedPassword, user);
+        user(ADMIN_EMAIL, encodedPassword, admin);
+        user(TWO_FACTOR_EMAIL, encodedPassword, user).setUsing2FA(true);
+        users.get(TWO_FACTOR_EMAIL).setSecret(totpSecret);
+
+        userRepository = stub(UserRepository.class, Map.of(
+                "findByEmail", args -> users.get((String) args[0]),
+                "findWithRolesByEmail", args -> users.get((String) args[0]),
+                "findAuthoritiesByEmail", args -> authorities(users.get((String) args[0]))));
+        roleRepository = stub(RoleRepository.class, Map.of(
+                "findAllWithPrivileges", args -> roles,
+                "findByName", args -> roles.stream().filter(r -> r.getName().equals(args[0])).findFirst().orElse(null)));
+    }
+
+    private Role role(final String name, final Privilege... privileges) {
+        final Role role = new Role(name);
+        role.setPrivileges(List.of(privileges));
+        roles.add(role);
+        return role;
+    }
+
+    private User user(final String email, final String encodedPassword, final Role role) {
+        final User user = new User();
+        user.setEmail(email);
+        user.setPassword(encodedPassword);
+        user.setEnabled(true);
+        user.setRoles(List.of(role));
+        users.put(email, user);
+        return user;
+    }
+
+    private static List<UserAuthorityProjection> authorities(final User user) {
+        if (user == null) {
+            return Collections.emptyList();
+        }
+        final List<UserAuthorityProjection> rows = new ArrayList<>();
+        for (final Role role : user.getRoles()) {
+            rows.add(new UserAuthorityProjection() {
+                public String getEmail() {
+                    return user.getEmail();
+                }
+
+                public String getPassword() {
+                    return user.getPassword();
+                }
+
+                public boolean isEnabled() {
+                    return user.isEnabled();
+                }
+
+                public boolean isUsing2FA() {
+                    return user.isUsing2FA();
+                }
+
+                public String getSecret() {
+                    return user.getSecret();
+                }
+
+                public String getRoleName() {
+                    return role.getName();
+                }
+            });
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(final Class<T> type, final Map<String, Function<Object[], Object>> methods) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            final Function<Object[], Object> implementation = methods.get(method.getName());
+            if (implementation != null) {
+                return implementation.apply(args);
+            }
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "Stub";
+                };
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+}
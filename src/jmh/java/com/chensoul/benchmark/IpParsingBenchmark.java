@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.security.attempt.IpAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a client address literal with {@link IpAddresses} against {@link InetAddress#getByName(String)}. Only
+ * literals are measured: for anything else the JDK falls through to a blocking DNS lookup, which is the reason
+ * the login path no longer uses it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IpParsingBenchmark {
+
+    @Param({"203.0.113.7", "2001:db8:85a3::8a2e:370:7334", "::ffff:203.0.113.7"})
+    public String ip;
+
+    @Benchmark
+    public byte[] ipAddresses() {
+        return IpAddresses.parse(ip);
+    }
+
+    @Benchmark
+    public byte[] inetAddress() throws UnknownHostException {
+        return InetAddress.getByName(ip).getAddress();
+    }
+}
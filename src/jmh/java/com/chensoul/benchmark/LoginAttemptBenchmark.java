@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.attempt.InMemoryLoginAttemptStore;
+import com.chensoul.security.attempt.IpAddresses;
+import com.chensoul.security.attempt.IpRadixTrie;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+
+/**
+ * Per-request cost of the IP block check with subnet aggregation against the String-keyed Caffeine cache it
+ * replaced, and the allow-list lookup as a radix trie against a linear scan of {@link IpAddressMatcher}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoginAttemptBenchmark {
+
+    @Param({"8", "256"})
+    public int allowListSize;
+
+    private LoginAttemptService loginAttemptService;
+    private LoadingCache<String, Integer> stringKeyedCache;
+    private MockHttpServletRequest[] requests;
+    private String[] addresses;
+    private IpRadixTrie allowList;
+    private List<IpAddressMatcher> allowListMatchers;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final List<String> cidrs = new ArrayList<>();
+        for (int i = 0; i < allowListSize; i++) {
+            cidrs.add(i % 2 == 0 ? "10." + i + ".0.0/16" : "2001:db8:" + Integer.toHexString(i) + "::/48");
+        }
+        allowList = IpRadixTrie.of(cidrs);
+        allowListMatchers = cidrs.stream().map(IpAddressMatcher::new).toList();
+
+        loginAttemptService = new LoginAttemptService(new MockHttpServletRequest(), new ClientIpResolver(List.of(), "X-Forwarded-For"), new InMemoryLoginAttemptStore(Duration.ofDays(1), 1 << 16, new SimpleMeterRegistry()), LoginAttemptService.MAX_ATTEMPT, 100, 24, 64, cidrs,
+                new SimpleMeterRegistry());
+        // built like the previous LoginAttemptService cache, but large enough to keep every key of the benchmark
+        stringKeyedCache = Caffeine.newBuilder()
+                .refreshAfterWrite(1, TimeUnit.DAYS)
+                .expireAfterWrite(1, TimeUnit.DAYS)
+                .expireAfterAccess(1, TimeUnit.DAYS)
+                .maximumSize(1 << 16)
+                .build(key -> 0);
+        requests = new MockHttpServletRequest[1024];
+        addresses = new String[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            addresses[i] = i % 4 == 0 ? "2001:db8:1:" + Integer.toHexString(i) + "::1" : "198.51." + (i % 256) + "." + (i / 4);
+            requests[i] = new MockHttpServletRequest();
+            requests[i].setRemoteAddr(addresses[i]);
+            if (i % 3 == 0) {
+                loginAttemptService.loginFailed(addresses[i]);
+                stringKeyedCache.put(addresses[i], stringKeyedCache.get(addresses[i]) + 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean isBlocked() {
+        return loginAttemptService.isBlocked(requests[next++ & (requests.length - 1)]);
+    }
+
+    /**
+     * The previous check: the client IP as a String straight from the header or peer, one cache lookup, no subnets.
+     */
+    @Benchmark
+    public boolean isBlockedStringKeyed() {
+        final MockHttpServletRequest request = requests[next++ & (requests.length - 1)];
+        final String xfHeader = request.getHeader("X-Forwarded-For");
+        final String ip = xfHeader != null ? xfHeader.split(",")[0] : request.getRemoteAddr();
+        return stringKeyedCache.get(ip) >= LoginAttemptService.MAX_ATTEMPT;
+    }
+
+    @Benchmark
+    public boolean allowListTrie() {
+        return allowList.contains(IpAddresses.parse(addresses[next++ & (addresses.length - 1)]));
+    }
+
+    /**
+     * What a list of Spring matchers costs: every entry is tried and each one resolves the address again.
+     */
+    @Benchmark
+    public boolean allowListMatchers() {
+        final String address = addresses[next++ & (addresses.length - 1)];
+        for (final IpAddressMatcher matcher : allowListMatchers) {
+            if (matcher.matches(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
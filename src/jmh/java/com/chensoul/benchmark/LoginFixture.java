@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.security.AccountAttemptService;
+import com.chensoul.security.CaffeineUserCache;
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.ConfigurablePasswordEncoder;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.MySimpleUrlAuthenticationSuccessHandler;
+import com.chensoul.security.MyUserDetailsService;
+import com.chensoul.security.RoleAuthorityRegistry;
+import com.chensoul.security.attempt.InMemoryLoginAttemptStore;
+import com.chensoul.security.google2fa.CustomAuthenticationProvider;
+import com.chensoul.security.google2fa.CustomWebAuthenticationDetails;
+import com.chensoul.security.google2fa.TotpVerifier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.jboss.aerogear.security.otp.Totp;
+import org.jboss.aerogear.security.otp.api.Base32;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * The login path wired by hand the way {@code SecSecurityConfig} wires it, on top of {@link InMemoryRepositories}.
+ */
+final class LoginFixture {
+    final InMemoryRepositories repositories;
+    final MockHttpServletRequest request;
+    final CaffeineUserCache userCache;
+    final RoleAuthorityRegistry roleAuthorityRegistry;
+    final LoginAttemptService loginAttemptService;
+    final MyUserDetailsService userDetailsService;
+    final TotpVerifier totpVerifier;
+    final CustomAuthenticationProvider authenticationProvider;
+    final TargetUrl successHandler = new TargetUrl();
+
+    final String totpSecret = Base32.random();
+    final SteppingClock clock = new SteppingClock();
+
+    LoginFixture(final int bcryptStrength) {
+        final PasswordEncoder passwordEncoder = ConfigurablePasswordEncoder.bcrypt(bcryptStrength);
+        repositories = new InMemoryRepositories(passwordEncoder.encode("test"), totpSecret);
+
+        request = new MockHttpServletRequest("POST", "/login");
+        request.setRemoteAddr("203.0.113.7");
+        request.setParameter("code", totpCode());
+
+        userCache = new CaffeineUserCache(10_000, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        roleAuthorityRegistry = new RoleAuthorityRegistry(repositories.roleRepository, userCache);
+        loginAttemptService = new LoginAttemptService(request, new ClientIpResolver(List.of(), "X-Forwarded-For"), new InMemoryLoginAttemptStore(Duration.ofDays(1), 1 << 20, new SimpleMeterRegistry()), LoginAttemptService.MAX_ATTEMPT, 100, 24, 64, List.of(),
+                new SimpleMeterRegistry());
+        final LoginUserContext loginUserContext = new LoginUserContext(repositories.userRepository);
+        userDetailsService = new MyUserDetailsService(repositories.userRepository, loginAttemptService, userCache, roleAuthorityRegistry, loginUserContext, event -> {
+        });
+
+        totpVerifier = new TotpVerifier(10_000, clock);
+        authenticationProvider = new CustomAuthenticationProvider(loginUserContext, totpVerifier,
+                new AccountAttemptService(5, Duration.ofSeconds(1), Duration.ofMinutes(15), Duration.ofHours(1), 1 << 20, new SimpleMeterRegistry()));
+        authenticationProvider.setUserDetailsService(userDetailsService);
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+    }
+
+    /**
+     * The code for the clock's current step, as the user's authenticator app would show it.
+     */
+    String totpCode() {
+        return new Totp(totpSecret, new org.jboss.aerogear.security.otp.api.Clock() {
+            @Override
+            public long getCurrentInterval() {
+                return clock.step;
+            }
+        }).now();
+    }
+
+    /**
+     * Moves to the next TOTP step, so the same user can log in again without tripping replay protection.
+     */
+    void nextTotpStep() {
+        clock.step++;
+        request.setParameter("code", totpCode());
+    }
+
+    UsernamePasswordAuthenticationToken token(final String email) {
+        final UsernamePasswordAuthenticationToken token = UsernamePasswordAuthenticationToken.unauthenticated(email, "test");
+        token.setDetails(new CustomWebAuthenticationDetails(request));
+        return token;
+    }
+
+    static final class SteppingClock extends Clock {
+        long step = System.currentTimeMillis() / 30_000;
+
+        @Override
+        public long millis() {
+            return step * 30_000;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+    }
+
+    /**
+     * Exposes the success handler's target URL resolution without its redirect and device checks.
+     */
+    static final class TargetUrl extends MySimpleUrlAuthenticationSuccessHandler {
+        TargetUrl() {
+            super(null, null, null);
+        }
+
+        @Override
+        public String determineTargetUrl(final Authentication authentication) {
+            return super.determineTargetUrl(authentication);
+        }
+    }
+}
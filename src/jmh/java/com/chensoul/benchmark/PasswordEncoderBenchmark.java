@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.security.ConfigurablePasswordEncoder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Hashes per second on a single core for each candidate setting of <code>security.password.*</code>. A login
+ * costs one {@link #matches()}, so the score is roughly the login ceiling per core.
+ * <p>
+ * Specs are <code>bcrypt:strength</code>, <code>argon2:memoryKiB:iterations</code> or
+ * <code>pbkdf2:iterations</code>; override with <code>-p encoder=...</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class PasswordEncoderBenchmark {
+
+    @Param({"bcrypt:10", "bcrypt:11", "bcrypt:12", "argon2:19456:2", "argon2:65536:3", "pbkdf2:310000", "pbkdf2:600000"})
+    public String encoder;
+
+    private PasswordEncoder passwordEncoder;
+
+    private String hash;
+
+    @Setup
+    public void setUp() {
+        passwordEncoder = create(encoder.split(":"));
+        hash = passwordEncoder.encode("Passw0rd!");
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return passwordEncoder.matches("Passw0rd!", hash);
+    }
+
+    @Benchmark
+    public String encode() {
+        return passwordEncoder.encode("Passw0rd!");
+    }
+
+    private static PasswordEncoder create(final String[] spec) {
+        switch (spec[0]) {
+        case ConfigurablePasswordEncoder.BCRYPT:
+            return ConfigurablePasswordEncoder.bcrypt(Integer.parseInt(spec[1]));
+        case ConfigurablePasswordEncoder.ARGON2:
+            return ConfigurablePasswordEncoder.argon2(16, 32, 1, Integer.parseInt(spec[1]), Integer.parseInt(spec[2]));
+        case ConfigurablePasswordEncoder.PBKDF2:
+            return ConfigurablePasswordEncoder.pbkdf2(16, Integer.parseInt(spec[1]));
+        default:
+            throw new IllegalArgumentException("Unknown encoder spec: " + String.join(":", spec));
+        }
+    }
+}
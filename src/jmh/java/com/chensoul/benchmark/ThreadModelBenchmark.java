@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.benchmark;
+
+import com.chensoul.security.ConfigurablePasswordEncoder;
+import com.chensoul.security.GatedPasswordEncoder;
+import com.chensoul.security.PasswordHashingGate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Login and registration throughput with Tomcat's default 200 platform workers against one virtual thread per
+ * request. Each simulated request does what the real one blocks on: the gated password hash plus sleeps that
+ * stand in for JDBC round trips, the GeoIP lookup and, for registration, the synchronous mail send.
+ * <p>
+ * The <code>virtual</code> executor needs Java 21+; on older JDKs its setup fails and only
+ * <code>platform</code> is reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+public class ThreadModelBenchmark {
+    private static final int REQUESTS = 2000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    @Param({"4"})
+    public int bcryptStrength;
+
+    @Param({"2"})
+    public long jdbcMillis;
+
+    @Param({"20"})
+    public long mailMillis;
+
+    private ExecutorService executorService;
+
+    private PasswordEncoder passwordEncoder;
+
+    private String hash;
+
+    @Setup
+    public void setUp() throws Exception {
+        executorService = "virtual".equals(executor)
+                ? (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        final PasswordHashingGate gate = new PasswordHashingGate(0, REQUESTS, Duration.ofMinutes(1), Duration.ofSeconds(1), new SimpleMeterRegistry());
+        passwordEncoder = new GatedPasswordEncoder(ConfigurablePasswordEncoder.bcrypt(bcryptStrength), gate);
+        hash = passwordEncoder.encode("Passw0rd!");
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void login() throws InterruptedException {
+        runAll(() -> {
+            // user + roles, then device metadata
+            sleep(jdbcMillis);
+            passwordEncoder.matches("Passw0rd!", hash);
+            sleep(jdbcMillis);
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void registration() throws InterruptedException {
+        runAll(() -> {
+            passwordEncoder.encode("Passw0rd!");
+            // user, then verification token
+            sleep(jdbcMillis);
+            sleep(jdbcMillis);
+            sleep(mailMillis);
+        });
+    }
+
+    private void runAll(final Runnable request) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            executorService.execute(() -> {
+                try {
+                    request.run();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.config;
+
+import com.chensoul.persistence.dao.DeviceMetadataRepository;
+import com.chensoul.persistence.model.DeviceMetadata;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Fills in the fingerprint of {@link DeviceMetadata} rows stored before the column existed. Rows that turn out
+ * to describe the same device of the same user would break the unique index, so only the most recently used
+ * one is kept.
+ */
+@RequiredArgsConstructor
+@Component
+public class DeviceMetadataMigration implements ApplicationListener<ContextRefreshedEvent> {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private static final Comparator<DeviceMetadata> MOST_RECENT_FIRST = Comparator.comparing(DeviceMetadata::getLastLoggedIn,
+            Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private boolean alreadyMigrated = false;
+
+    private final DeviceMetadataRepository deviceMetadataRepository;
+
+    @Override
+    @Transactional
+    public void onApplicationEvent(final ContextRefreshedEvent event) {
+        if (alreadyMigrated) {
+            return;
+        }
+
+        final List<DeviceMetadata> devices = new ArrayList<>(deviceMetadataRepository.findByFingerprintIsNull());
+        if (!devices.isEmpty()) {
+            devices.sort(MOST_RECENT_FIRST);
+            final Map<String, DeviceMetadata> kept = new HashMap<>();
+            final List<DeviceMetadata> duplicates = new ArrayList<>();
+            for (final DeviceMetadata device : devices) {
+                final String fingerprint = DeviceMetadata.fingerprint(device.getDeviceDetails(), device.getLocation());
+                if (kept.putIfAbsent(device.getUserId() + ":" + fingerprint, device) == null) {
+                    device.setFingerprint(fingerprint);
+                } else {
+                    duplicates.add(device);
+                }
+            }
+            // remove the duplicates before the survivors take their fingerprint
+            deviceMetadataRepository.deleteAllInBatch(duplicates);
+            deviceMetadataRepository.saveAll(kept.values());
+            LOGGER.info("Added fingerprints to {} devices, removed {} duplicates", kept.size(), duplicates.size());
+        }
+
+        alreadyMigrated = true;
+    }
+}
@@ -15,27 +15,46 @@
  */
 package com.chensoul.config;
 
-import com.maxmind.geoip2.DatabaseReader;
-import java.io.File;
+import com.chensoul.service.ReloadableDatabaseReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.util.ResourceUtils;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StringUtils;
 import ua_parser.Parser;
 
 @Configuration
 public class LoginNotificationConfig {
 
+    // decoded nodes and records shared between lookups, per reader
+    @Value("${geoip.node-cache.capacity:4096}")
+    private int nodeCacheCapacity;
+
+    // loading its regexes takes a while, so UserAgentService creates it on the first login instead of at startup
+    @Lazy
     @Bean
     public Parser uaParser() throws IOException {
         return new Parser();
     }
 
-    @Bean(name="GeoIPCity")
-    public DatabaseReader databaseReader() throws IOException {
-        File database = ResourceUtils
-                .getFile("classpath:maxmind/GeoLite2-City.mmdb");
-        return new DatabaseReader.Builder(database)
-                .build();
+    @Bean(name="GeoIPCity", destroyMethod = "close")
+    public ReloadableDatabaseReader databaseReader(@Value("${geoip.city.path:}") String path) throws IOException {
+        return new ReloadableDatabaseReader("GeoLite2-City", toPath(path),
+                new ClassPathResource("maxmind/GeoLite2-City.mmdb"), nodeCacheCapacity);
+    }
+
+    // only opened if GeoIpService has no City database to answer from
+    @Lazy
+    @Bean(name="GeoIPCountry", destroyMethod = "close")
+    public ReloadableDatabaseReader countryDatabaseReader(@Value("${geoip.country.path:}") String path) throws IOException {
+        return new ReloadableDatabaseReader("GeoLite2-Country", toPath(path),
+                new ClassPathResource("maxmind/GeoLite2-Country.mmdb"), nodeCacheCapacity);
+    }
+
+    private static Path toPath(String path) {
+        return StringUtils.hasText(path) ? Path.of(path.trim()) : null;
     }
 }
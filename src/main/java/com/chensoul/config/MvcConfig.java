@@ -17,7 +17,9 @@ package com.chensoul.config;
 
 import com.chensoul.validation.EmailValidator;
 import com.chensoul.validation.PasswordMatchesValidator;
+import com.chensoul.web.ratelimit.RateLimitInterceptor;
 import java.util.Locale;
+import lombok.RequiredArgsConstructor;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.boot.web.servlet.server.ConfigurableServletWebServerFactory;
@@ -39,10 +41,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.i18n.CookieLocaleResolver;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
 
+@RequiredArgsConstructor
 @Configuration
 @ComponentScan(basePackages = {"com.chensoul.web"})
 @EnableWebMvc
 public class MvcConfig implements WebMvcConfigurer {
+    private final RateLimitInterceptor rateLimitInterceptor;
 
     @Override
     public void addViewControllers(final ViewControllerRegistry registry) {
@@ -83,6 +87,7 @@ public class MvcConfig implements WebMvcConfigurer {
         final LocaleChangeInterceptor localeChangeInterceptor = new LocaleChangeInterceptor();
         localeChangeInterceptor.setParamName("lang");
         registry.addInterceptor(localeChangeInterceptor);
+        registry.addInterceptor(rateLimitInterceptor);
     }
 
     // beans
@@ -15,14 +15,23 @@
  */
 package com.chensoul.config;
 
-import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.security.AccountAttemptService;
+import com.chensoul.security.BlockedClientFilter;
+import com.chensoul.security.ConfigurablePasswordEncoder;
 import com.chensoul.security.CustomRememberMeServices;
+import com.chensoul.security.GatedPasswordEncoder;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.PasswordHashingGate;
 import com.chensoul.security.google2fa.CustomAuthenticationProvider;
 import com.chensoul.security.google2fa.CustomWebAuthenticationDetailsSource;
+import com.chensoul.security.google2fa.TotpVerifier;
 import com.chensoul.security.location.DifferentLocationChecker;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -33,13 +42,14 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.core.session.SessionRegistry;
 import org.springframework.security.core.session.SessionRegistryImpl;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.AuthenticationFailureHandler;
 import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
 import org.springframework.security.web.authentication.RememberMeServices;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.authentication.logout.LogoutSuccessHandler;
 import org.springframework.security.web.authentication.rememberme.InMemoryTokenRepositoryImpl;
 import org.springframework.security.web.session.HttpSessionEventPublisher;
@@ -50,12 +60,18 @@ import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 @Configuration
 public class SecSecurityConfig {
     private final UserDetailsService userDetailsService;
+    private final UserDetailsPasswordService userDetailsPasswordService;
     private final AuthenticationSuccessHandler myAuthenticationSuccessHandler;
     private final LogoutSuccessHandler myLogoutSuccessHandler;
     private final AuthenticationFailureHandler authenticationFailureHandler;
     private final CustomWebAuthenticationDetailsSource authenticationDetailsSource;
-    private final UserRepository userRepository;
+    private final LoginUserContext loginUserContext;
     private final DifferentLocationChecker differentLocationChecker;
+    private final PasswordHashingGate passwordHashingGate;
+    private final TotpVerifier totpVerifier;
+    private final LoginAttemptService loginAttemptService;
+    private final AccountAttemptService accountAttemptService;
+    private final Environment env;
 
     @Bean
     public AuthenticationManager authManager(HttpSecurity http) throws Exception {
@@ -82,6 +98,8 @@ public class SecSecurityConfig {
                             .permitAll()
                             .requestMatchers("/invalidSession*").anonymous()
                             .requestMatchers("/user/updatePassword*").hasAuthority("CHANGE_PASSWORD_PRIVILEGE")
+                            // meter names and tags describe users and infrastructure
+                            .requestMatchers(EndpointRequest.to("metrics")).hasRole("ADMIN")
                             .requestMatchers("/console")
                             .hasAuthority("READ_PRIVILEGE")
                             .anyRequest()
@@ -102,7 +120,8 @@ public class SecSecurityConfig {
                         .logoutSuccessUrl("/logout.html?logSucc=true")
                         .deleteCookies("JSESSIONID")
                         .permitAll())
-                .rememberMe((remember) -> remember.rememberMeServices(rememberMeServices()));
+                .rememberMe((remember) -> remember.rememberMeServices(rememberMeServices()))
+                .addFilterBefore(new BlockedClientFilter(loginAttemptService), UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
     }
@@ -111,22 +130,31 @@ public class SecSecurityConfig {
 
     @Bean
     public DaoAuthenticationProvider authProvider() {
-        final CustomAuthenticationProvider authProvider = new CustomAuthenticationProvider(userRepository);
+        final CustomAuthenticationProvider authProvider = new CustomAuthenticationProvider(loginUserContext, totpVerifier, accountAttemptService);
         authProvider.setUserDetailsService(userDetailsService);
         authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userDetailsPasswordService);
         authProvider.setPostAuthenticationChecks(differentLocationChecker);
         return authProvider;
     }
 
     @Bean
     public RememberMeServices rememberMeServices() {
-        CustomRememberMeServices rememberMeServices = new CustomRememberMeServices("theKey", userDetailsService, new InMemoryTokenRepositoryImpl(), userRepository);
+        CustomRememberMeServices rememberMeServices = new CustomRememberMeServices("theKey", userDetailsService, new InMemoryTokenRepositoryImpl(), loginUserContext);
         return rememberMeServices;
     }
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(11);
+        return new GatedPasswordEncoder(new ConfigurablePasswordEncoder(env.getProperty("security.password.encoder", ConfigurablePasswordEncoder.BCRYPT),
+                ConfigurablePasswordEncoder.bcrypt(env.getProperty("security.password.bcrypt.strength", Integer.class, 11)),
+                ConfigurablePasswordEncoder.argon2(env.getProperty("security.password.argon2.salt-length", Integer.class, 16),
+                        env.getProperty("security.password.argon2.hash-length", Integer.class, 32),
+                        env.getProperty("security.password.argon2.parallelism", Integer.class, 1),
+                        env.getProperty("security.password.argon2.memory", Integer.class, 19456),
+                        env.getProperty("security.password.argon2.iterations", Integer.class, 2)),
+                ConfigurablePasswordEncoder.pbkdf2(env.getProperty("security.password.pbkdf2.salt-length", Integer.class, 16),
+                        env.getProperty("security.password.pbkdf2.iterations", Integer.class, 310000))), passwordHashingGate);
     }
 
     @Bean
@@ -19,6 +19,11 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+/**
+ * {@code @Scheduled} work runs on Boot's auto-configured scheduler, sized by {@code spring.task.scheduling.pool.size}
+ * so slow jobs do not delay the periodic flushes. It switches to virtual threads together with Tomcat when
+ * {@code spring.threads.virtual.enabled} is set on Java 21+.
+ */
 @Configuration
 @EnableScheduling
 @ComponentScan({"com.chensoul.task"})
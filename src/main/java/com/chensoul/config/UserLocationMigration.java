@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.config;
+
+import com.chensoul.persistence.dao.UserLocationRepository;
+import com.chensoul.persistence.model.UserLocation;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Fills in the ISO country code of {@link UserLocation} rows stored before the column existed, from their country
+ * name. The names come from the English MaxMind records, so they are matched against the JDK's English names after
+ * normalising punctuation and "St."/"&", plus the MaxMind spellings the JDK does not use.
+ * <p>
+ * Rows are read and updated {@link #BATCH_SIZE} at a time, each batch in its own transaction.
+ * <p>
+ * Rows whose name still has no code get {@link #UNMATCHED}, which never equals a looked-up country, so they keep
+ * triggering the location check until the user confirms the country again and are not scanned on every start.
+ * Each is logged with its id and user; adding the name to the table below and setting their code back to null
+ * has them matched again on the next start.
+ */
+@RequiredArgsConstructor
+@Component
+public class UserLocationMigration implements ApplicationListener<ContextRefreshedEvent> {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    public static final String UNMATCHED = "--";
+
+    public static final int BATCH_SIZE = 500;
+
+    // MaxMind English names that differ from the JDK's beyond normalisation
+    private static final Map<String, String> MAXMIND_NAMES = Map.ofEntries(
+            Map.entry("Hong Kong", "HK"),
+            Map.entry("Macao", "MO"),
+            Map.entry("Myanmar", "MM"),
+            Map.entry("Palestine", "PS"),
+            Map.entry("Ivory Coast", "CI"),
+            Map.entry("DR Congo", "CD"),
+            Map.entry("Congo Republic", "CG"),
+            Map.entry("Republic of the Congo", "CG"),
+            Map.entry("Cabo Verde", "CV"),
+            Map.entry("Federated States of Micronesia", "FM"),
+            Map.entry("Åland", "AX"),
+            Map.entry("Bonaire, Sint Eustatius, and Saba", "BQ"),
+            Map.entry("St Vincent and Grenadines", "VC"),
+            Map.entry("South Georgia and the South Sandwich Islands", "GS"),
+            Map.entry("U.S. Minor Outlying Islands", "UM"),
+            Map.entry("Hashemite Kingdom of Jordan", "JO"),
+            Map.entry("Republic of Lithuania", "LT"),
+            Map.entry("Republic of Moldova", "MD"),
+            Map.entry("Türkiye", "TR"),
+            Map.entry("Turkey", "TR"),
+            Map.entry("Kosovo", "XK"));
+
+    private boolean alreadyMigrated = false;
+
+    private final UserLocationRepository userLocationRepository;
+
+    private final PlatformTransactionManager transactionManager;
+
+    @Override
+    public void onApplicationEvent(final ContextRefreshedEvent event) {
+        if (alreadyMigrated) {
+            return;
+        }
+
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        final Map<String, String> codes = countryCodesByName();
+        final Map<String, Integer> unmatched = new TreeMap<>();
+        int total = 0;
+        long lastId = 0;
+        while (true) {
+            final long afterId = lastId;
+            final List<UserLocation> batch = transactionTemplate.execute(status -> migrate(afterId, codes, unmatched));
+            total += batch.size();
+            if (batch.size() < BATCH_SIZE) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+        }
+
+        if (total > 0) {
+            final int missing = unmatched.values().stream().mapToInt(Integer::intValue).sum();
+            LOGGER.info("Added country codes to {} of {} user locations", total - missing, total);
+            if (!unmatched.isEmpty()) {
+                LOGGER.warn("No country code for user locations named {}; their users are asked to confirm the country again", unmatched);
+            }
+        }
+
+        alreadyMigrated = true;
+    }
+
+    private List<UserLocation> migrate(final long afterId, final Map<String, String> codes, final Map<String, Integer> unmatched) {
+        final List<UserLocation> locations = userLocationRepository.findByCountryCodeIsNullAndIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, BATCH_SIZE));
+        for (final UserLocation location : locations) {
+            final String code = location.getCountry() == null ? null : codes.get(normalize(location.getCountry()));
+            if (code != null) {
+                location.setCountryCode(code);
+            } else {
+                location.setCountryCode(UNMATCHED);
+                unmatched.merge(String.valueOf(location.getCountry()), 1, Integer::sum);
+                LOGGER.warn("No country code for user location {} of user {} named {}", location.getId(),
+                        location.getUser() == null ? null : location.getUser().getId(), location.getCountry());
+            }
+        }
+        userLocationRepository.saveAll(locations);
+        return locations;
+    }
+
+    private static Map<String, String> countryCodesByName() {
+        final Map<String, String> codes = new HashMap<>();
+        for (final String code : Locale.getISOCountries()) {
+            codes.put(normalize(new Locale("", code).getDisplayCountry(Locale.ENGLISH)), code);
+        }
+        MAXMIND_NAMES.forEach((name, code) -> codes.put(normalize(name), code));
+        return codes;
+    }
+
+    /**
+     * Lower case without accents or punctuation, "St." and "St" spelled out and "&amp;" as "and", so that
+     * "St Kitts and Nevis" and "St. Kitts &amp; Nevis" meet.
+     */
+    private static String normalize(final String name) {
+        final String plain = Normalizer.normalize(name, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .replace("&", " and ")
+                .replaceAll("[^a-z0-9]+", " ")
+                .trim();
+        return plain.replaceAll("^st ", "saint ").replaceAll("^the ", "");
+    }
+}
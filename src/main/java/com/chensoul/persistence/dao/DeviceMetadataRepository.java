@@ -22,4 +22,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 public interface DeviceMetadataRepository extends JpaRepository<DeviceMetadata, Long> {
 
     List<DeviceMetadata> findByUserId(Long userId);
+
+    DeviceMetadata findByUserIdAndFingerprint(Long userId, String fingerprint);
+
+    List<DeviceMetadata> findByFingerprintIsNull();
 }
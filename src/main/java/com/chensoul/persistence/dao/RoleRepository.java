@@ -16,12 +16,17 @@
 package com.chensoul.persistence.dao;
 
 import com.chensoul.persistence.model.Role;
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface RoleRepository extends JpaRepository<Role, Long> {
 
     Role findByName(String name);
 
+    @Query("select distinct r from Role r left join fetch r.privileges")
+    List<Role> findAllWithPrivileges();
+
     @Override
     void delete(Role role);
 
@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.persistence.dao;
+
+/**
+ * One row of the flattened user / role join used on the authentication path; a user with several roles yields one
+ * row per role. Privileges are resolved from the role name by {@code RoleAuthorityRegistry}.
+ */
+public interface UserAuthorityProjection {
+
+    String getEmail();
+
+    String getPassword();
+
+    boolean isEnabled();
+
+    boolean isUsing2FA();
+
+    String getSecret();
+
+    String getRoleName();
+}
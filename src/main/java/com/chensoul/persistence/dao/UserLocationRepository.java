@@ -17,9 +17,19 @@ package com.chensoul.persistence.dao;
 
 import com.chensoul.persistence.model.User;
 import com.chensoul.persistence.model.UserLocation;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface UserLocationRepository extends JpaRepository<UserLocation, Long> {
     UserLocation findByCountryAndUser(String country, User user);
 
+    UserLocation findFirstByCountryCodeAndUserAndEnabledTrue(String countryCode, User user);
+
+    @Query("select l.countryCode from UserLocation l where l.user.id = ?1 and l.enabled = true and l.countryCode is not null")
+    List<String> findEnabledCountryCodesByUserId(Long userId);
+
+    List<UserLocation> findByCountryCodeIsNullAndIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
 }
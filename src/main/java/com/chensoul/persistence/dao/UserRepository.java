@@ -16,11 +16,22 @@
 package com.chensoul.persistence.dao;
 
 import com.chensoul.persistence.model.User;
+import java.util.List;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByEmail(String email);
 
+    @EntityGraph(attributePaths = "roles")
+    @Query("select u from User u where u.email = ?1")
+    User findWithRolesByEmail(String email);
+
+    @Query("select u.email as email, u.password as password, u.enabled as enabled, u.isUsing2FA as using2FA, u.secret as secret, r.name as roleName "
+            + "from User u left join u.roles r where u.email = ?1")
+    List<UserAuthorityProjection> findAuthoritiesByEmail(String email);
+
     @Override
     void delete(User user);
 
@@ -15,15 +15,23 @@
  */
 package com.chensoul.persistence.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
 import lombok.Data;
 
 @Data
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_device_metadata_user_fingerprint", columnNames = {"userId", "fingerprint"}))
 public class DeviceMetadata {
 
     @Id
@@ -32,6 +40,34 @@ public class DeviceMetadata {
     private Long userId;
     private String deviceDetails;
     private String location;
+    @Column(length = 64)
+    private String fingerprint;
     private Date lastLoggedIn;
 
+    public void setDeviceDetails(String deviceDetails) {
+        this.deviceDetails = deviceDetails;
+        this.fingerprint = fingerprint(deviceDetails, location);
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+        this.fingerprint = fingerprint(deviceDetails, location);
+    }
+
+    /**
+     * @return the hex SHA-256 of device details and location, which identifies a device per user
+     */
+    public static String fingerprint(String deviceDetails, String location) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(deviceDetails).getBytes(StandardCharsets.UTF_8));
+            // a separator that cannot occur in either part keeps "a"+"bc" apart from "ab"+"c"
+            digest.update((byte) 0);
+            digest.update(String.valueOf(location).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.persistence.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Login failures for one attempt key within one fixed window, shared by all nodes when
+ * {@code security.login-attempts.store=jdbc}. Written with plain JDBC by the attempt store; mapped here so the
+ * schema is managed with the others.
+ */
+@Data
+@Entity
+@IdClass(LoginAttempt.Key.class)
+@Table(indexes = @Index(name = "idx_login_attempt_window", columnList = "windowStart"))
+public class LoginAttempt {
+
+    @Id
+    private long attemptKey;
+
+    /**
+     * Epoch millis at which the window starts.
+     */
+    @Id
+    private long windowStart;
+
+    private long failures;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private long attemptKey;
+        private long windowStart;
+    }
+}
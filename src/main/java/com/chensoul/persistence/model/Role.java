@@ -15,7 +15,9 @@
  */
 package com.chensoul.persistence.model;
 
+import com.chensoul.persistence.listener.AuthorityChangeListener;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -27,6 +29,7 @@ import lombok.Data;
 
 @Data
 @Entity
+@EntityListeners(AuthorityChangeListener.class)
 public class Role {
 
     @Id
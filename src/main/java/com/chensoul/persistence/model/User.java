@@ -45,7 +45,8 @@ public class User {
 
     private String email;
 
-    @Column(length = 60)
+    // room for {argon2}/{pbkdf2} hashes; un-prefixed BCrypt still fits the old 60
+    @Column(length = 128)
     private String password;
 
     private boolean enabled;
@@ -15,17 +15,21 @@
  */
 package com.chensoul.persistence.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
 import lombok.Data;
 
 @Data
 @Entity
+@Table(indexes = @Index(name = "idx_user_location_user_country", columnList = "user_id,countryCode"))
 public class UserLocation {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -33,6 +37,10 @@ public class UserLocation {
 
     private String country;
 
+    // ISO 3166-1 alpha-2; the country name above is only kept for display
+    @Column(length = 2)
+    private String countryCode;
+
     private boolean enabled;
 
     @ManyToOne(targetEntity = User.class, fetch = FetchType.EAGER)
@@ -51,4 +59,9 @@ public class UserLocation {
         enabled = false;
     }
 
+    public UserLocation(String countryCode, String country, User user) {
+        this(country, user);
+        this.countryCode = countryCode;
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import com.chensoul.security.attempt.SlidingWindowCounter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Locale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Failure tracking per account, the counterpart of the per-IP {@link LoginAttemptService}: once an account has
+ * collected {@code threshold} failures within the window, further logins are refused without checking the
+ * password for an exponentially growing delay, however many addresses the attempts come from.
+ */
+@Service
+public class AccountAttemptService {
+    private final SlidingWindowCounter failures;
+    private final Cache<Long, Long> lockedUntil;
+    private final int threshold;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    private final Counter rejected;
+
+    public AccountAttemptService(@Value("${security.login-attempts.account.threshold:5}") final int threshold,
+                                 @Value("${security.login-attempts.account.base-delay:1s}") final Duration baseDelay,
+                                 @Value("${security.login-attempts.account.max-delay:15m}") final Duration maxDelay,
+                                 @Value("${security.login-attempts.account.window:1h}") final Duration window,
+                                 @Value("${security.login-attempts.account.capacity:1048576}") final int capacity,
+                                 final MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+        this.failures = new SlidingWindowCounter(capacity, window);
+        // only accounts past the threshold get an entry
+        this.lockedUntil = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, capacity / 8))
+                .expireAfterWrite(maxDelay)
+                .build();
+
+        Gauge.builder("security.login-attempts.account.tracked", failures, SlidingWindowCounter::size)
+                .description("Accounts with recorded login failures")
+                .register(meterRegistry);
+        Gauge.builder("security.login-attempts.account.locked", lockedUntil, Cache::estimatedSize)
+                .description("Accounts currently in a failure backoff")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("security.login-attempts.account.rejected")
+                .description("Logins refused during an account backoff, each one a password hash not computed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return how long the account is still backed off, 0 if a login may proceed
+     */
+    public long getBackoffMillis(final String username) {
+        final Long until = lockedUntil.getIfPresent(key(username));
+        if (until == null) {
+            return 0;
+        }
+        final long remaining = until - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return 0;
+        }
+        rejected.increment();
+        return remaining;
+    }
+
+    public void loginFailed(final String username) {
+        final long key = key(username);
+        final long count = failures.increment(key);
+        if (count >= threshold) {
+            final int doublings = (int) Math.min(count - threshold, 30);
+            final long delay = Math.min(maxDelayMillis, baseDelayMillis << doublings);
+            lockedUntil.put(key, System.currentTimeMillis() + delay);
+        }
+    }
+
+    public void loginSucceeded(final String username) {
+        final long key = key(username);
+        failures.reset(key);
+        lockedUntil.invalidate(key);
+    }
+
+    private static long key(final String username) {
+        return SlidingWindowCounter.hash(username.toLowerCase(Locale.ROOT));
+    }
+}
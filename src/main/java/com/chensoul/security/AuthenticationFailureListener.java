@@ -15,6 +15,7 @@
  */
 package com.chensoul.security;
 
+import com.chensoul.security.attempt.AccountBackoffException;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.ApplicationListener;
@@ -25,15 +26,16 @@ import org.springframework.stereotype.Component;
 @Component
 public class AuthenticationFailureListener implements ApplicationListener<AuthenticationFailureBadCredentialsEvent> {
     private final HttpServletRequest request;
+    private final ClientIpResolver clientIpResolver;
     private final LoginAttemptService loginAttemptService;
+    private final AccountAttemptService accountAttemptService;
 
     @Override
     public void onApplicationEvent(final AuthenticationFailureBadCredentialsEvent e) {
-        final String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader == null || xfHeader.isEmpty() || !xfHeader.contains(request.getRemoteAddr())) {
-            loginAttemptService.loginFailed(request.getRemoteAddr());
-        } else {
-            loginAttemptService.loginFailed(xfHeader.split(",")[0]);
+        loginAttemptService.loginFailed(clientIpResolver.resolve(request));
+        // refusals during a backoff must not stretch it, or an attacker could keep the owner locked out
+        if (!(e.getException() instanceof AccountBackoffException)) {
+            accountAttemptService.loginFailed(e.getAuthentication().getName());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * The client address of one request as resolved by {@link ClientIpResolver}: the text as it arrived and, when it
+ * is an IP literal, its raw bytes.
+ */
+public final class ClientAddress {
+    private final String ip;
+    private final byte[] address;
+
+    ClientAddress(final String ip, final byte[] address) {
+        this.ip = ip;
+        this.address = address;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    /**
+     * @return 4 or 16 bytes, or {@code null} if the client did not send a usable literal; shared, do not modify
+     */
+    public byte[] getAddress() {
+        return address;
+    }
+
+    public boolean isResolved() {
+        return address != null;
+    }
+
+    /**
+     * @return the address without a DNS lookup, or {@code null} if it is not resolved
+     */
+    public InetAddress toInetAddress() {
+        if (address == null) {
+            return null;
+        }
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (final UnknownHostException e) {
+            // only thrown for an illegal length, which the parser never produces
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return ip;
+    }
+}
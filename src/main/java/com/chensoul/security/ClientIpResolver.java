@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import com.chensoul.security.attempt.IpAddresses;
+import com.chensoul.security.attempt.IpRadixTrie;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the client address of a request once and caches it as a request attribute.
+ * <p>
+ * The forwarding header is only believed when the peer is one of the trusted proxies. It is then walked from
+ * right to left, skipping hops that are trusted proxies themselves; the first untrusted hop is the client. A hop
+ * that is not an IP literal stops the walk, and the last trusted hop is used instead, so a client cannot choose
+ * its own address by prepending entries.
+ */
+@Component
+public class ClientIpResolver {
+
+    public static final String ATTRIBUTE = ClientIpResolver.class.getName() + ".CLIENT_ADDRESS";
+
+    private final IpRadixTrie trustedProxies;
+
+    private final String header;
+
+    public ClientIpResolver(@Value("${security.client-ip.trusted-proxies:127.0.0.0/8,::1}") final List<String> trustedProxies,
+                            @Value("${security.client-ip.header:X-Forwarded-For}") final String header) {
+        this.trustedProxies = IpRadixTrie.of(trustedProxies);
+        this.header = header;
+    }
+
+    public ClientAddress resolve(final HttpServletRequest request) {
+        final Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached instanceof ClientAddress) {
+            return (ClientAddress) cached;
+        }
+        final ClientAddress resolved = doResolve(request);
+        request.setAttribute(ATTRIBUTE, resolved);
+        return resolved;
+    }
+
+    public String resolveIp(final HttpServletRequest request) {
+        return resolve(request).getIp();
+    }
+
+    private ClientAddress doResolve(final HttpServletRequest request) {
+        final String remoteAddr = request.getRemoteAddr();
+        final ClientAddress client = new ClientAddress(remoteAddr, IpAddresses.parse(remoteAddr));
+        if (!client.isResolved() || trustedProxies.isEmpty() || !trustedProxies.contains(client.getAddress())) {
+            return client;
+        }
+
+        final Enumeration<String> values = request.getHeaders(header);
+        if (values == null || !values.hasMoreElements()) {
+            return client;
+        }
+        final Walk walk = new Walk();
+        final String first = values.nextElement();
+        if (!values.hasMoreElements()) {
+            walk.over(first);
+            return walk.result(client);
+        }
+        // repeated headers form one list in arrival order, so the nearest hops are in the last one
+        final List<String> all = Collections.list(values);
+        boolean stopped = false;
+        for (int i = all.size() - 1; i >= 0 && !stopped; i--) {
+            stopped = walk.over(all.get(i));
+        }
+        if (!stopped) {
+            walk.over(first);
+        }
+        return walk.result(client);
+    }
+
+    /**
+     * One right-to-left walk over the forwarding header. Every hop is parsed into the same scratch buffer and
+     * checked against the trusted proxies there; only the hop that ends the walk is copied out.
+     */
+    private final class Walk {
+        private final byte[] scratch = new byte[IpAddresses.IPV6_LENGTH];
+        private String value;
+        private int from;
+        private int to;
+
+        /**
+         * @return true once the walk has ended, false if every hop of {@code list} was a trusted proxy
+         */
+        boolean over(final String list) {
+            int end = list.length();
+            while (true) {
+                int comma = end - 1;
+                while (comma >= 0 && list.charAt(comma) != ',') {
+                    comma--;
+                }
+                final int length = IpAddresses.parse(list, comma + 1, end, scratch);
+                if (length < 0) {
+                    return true;
+                }
+                value = list;
+                from = comma + 1;
+                to = end;
+                if (!trustedProxies.contains(scratch, length)) {
+                    return true;
+                }
+                if (comma < 0) {
+                    return false;
+                }
+                end = comma;
+            }
+        }
+
+        /**
+         * @param proxy the peer, already known to be trusted
+         * @return the first untrusted hop, the leftmost hop if all are trusted, or {@code proxy} if the nearest
+         * entry is empty or unreadable
+         */
+        ClientAddress result(final ClientAddress proxy) {
+            if (value == null) {
+                return proxy;
+            }
+            return new ClientAddress(value.substring(from, to).trim(), IpAddresses.parse(value, from, to));
+        }
+    }
+}
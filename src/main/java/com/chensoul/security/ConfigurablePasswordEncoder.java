@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+/**
+ * Hashes new passwords with the configured target algorithm and still matches hashes written with any of the
+ * others, so the target and its cost can be retuned without forcing password resets.
+ * <p>
+ * BCrypt hashes are stored without an <code>{id}</code> prefix, as they always have been, and
+ * {@link #upgradeEncoding(String)} reports every hash that is not in the current target format, so the
+ * authentication provider can re-hash it on the next successful login.
+ */
+public class ConfigurablePasswordEncoder implements PasswordEncoder {
+    public static final String BCRYPT = "bcrypt";
+    public static final String ARGON2 = "argon2";
+    public static final String PBKDF2 = "pbkdf2";
+
+    private final String idForEncode;
+    private final PasswordEncoder bcrypt;
+    private final DelegatingPasswordEncoder delegate;
+
+    public ConfigurablePasswordEncoder(final String idForEncode, final PasswordEncoder bcrypt, final PasswordEncoder argon2, final PasswordEncoder pbkdf2) {
+        final Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, bcrypt);
+        encoders.put(ARGON2, argon2);
+        encoders.put(PBKDF2, pbkdf2);
+        if (!encoders.containsKey(idForEncode)) {
+            throw new IllegalArgumentException("Unknown password encoder: " + idForEncode);
+        }
+
+        this.idForEncode = idForEncode;
+        this.bcrypt = bcrypt;
+        this.delegate = new DelegatingPasswordEncoder(idForEncode, encoders);
+        // hashes written before the prefixes were introduced are plain BCrypt
+        this.delegate.setDefaultPasswordEncoderForMatches(bcrypt);
+    }
+
+    public static PasswordEncoder bcrypt(final int strength) {
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    public static PasswordEncoder argon2(final int saltLength, final int hashLength, final int parallelism, final int memory, final int iterations) {
+        return new Argon2PasswordEncoder(saltLength, hashLength, parallelism, memory, iterations);
+    }
+
+    public static PasswordEncoder pbkdf2(final int saltLength, final int iterations) {
+        return new Pbkdf2PasswordEncoder("", saltLength, iterations, Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256);
+    }
+
+    public String getIdForEncode() {
+        return idForEncode;
+    }
+
+    @Override
+    public String encode(final CharSequence rawPassword) {
+        return isBcryptTarget() ? bcrypt.encode(rawPassword) : delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(final CharSequence rawPassword, final String encodedPassword) {
+        return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    @Override
+    public boolean upgradeEncoding(final String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.isEmpty()) {
+            return false;
+        }
+        if (!encodedPassword.startsWith("{")) {
+            // un-prefixed BCrypt: only stale if the target moved away from BCrypt or its cost went up
+            return !isBcryptTarget() || bcrypt.upgradeEncoding(encodedPassword);
+        }
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private boolean isBcryptTarget() {
+        return BCRYPT.equals(idForEncode);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.chensoul.security;
 
+import com.chensoul.security.attempt.AccountBackoffException;
+import com.chensoul.web.error.TooManyRequestsException;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -22,6 +24,8 @@ import java.io.IOException;
 import java.util.Locale;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.MessageSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.WebAttributes;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
@@ -38,6 +42,14 @@ public class CustomAuthenticationFailureHandler extends SimpleUrlAuthenticationF
 
     @Override
     public void onAuthenticationFailure(final HttpServletRequest request, final HttpServletResponse response, final AuthenticationException exception) throws IOException, ServletException {
+        if (exception.getCause() instanceof TooManyRequestsException tooManyRequests) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(tooManyRequests.getRetryAfterSeconds()));
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write(messages.getMessage("message.tooManyRequests", null, localeResolver.resolveLocale(request)));
+            return;
+        }
+
         setDefaultFailureUrl("/login?error=true");
 
         super.onAuthenticationFailure(request, response, exception);
@@ -50,7 +62,9 @@ public class CustomAuthenticationFailureHandler extends SimpleUrlAuthenticationF
             errorMessage = messages.getMessage("auth.message.blocked", null, locale);
         }
 
-        if (exception.getMessage()
+        if (exception instanceof AccountBackoffException) {
+            errorMessage = messages.getMessage("auth.message.accountBackoff", null, locale);
+        } else if (exception.getMessage()
             .equalsIgnoreCase("User is disabled")) {
             errorMessage = messages.getMessage("auth.message.disabled", null, locale);
         } else if (exception.getMessage()
@@ -15,7 +15,6 @@
  */
 package com.chensoul.security;
 
-import com.chensoul.persistence.dao.UserRepository;
 import com.chensoul.persistence.model.User;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -34,18 +33,18 @@ import org.springframework.security.web.authentication.rememberme.PersistentToke
 
 public class CustomRememberMeServices extends PersistentTokenBasedRememberMeServices {
 
-    private UserRepository userRepository;
+    private LoginUserContext loginUserContext;
 
     private GrantedAuthoritiesMapper authoritiesMapper = new NullAuthoritiesMapper();
     private AuthenticationDetailsSource<HttpServletRequest, ?> authenticationDetailsSource = new WebAuthenticationDetailsSource();
     private PersistentTokenRepository tokenRepository;
     private String key;
 
-    public CustomRememberMeServices(String key, UserDetailsService userDetailsService, PersistentTokenRepository tokenRepository, UserRepository userRepository) {
+    public CustomRememberMeServices(String key, UserDetailsService userDetailsService, PersistentTokenRepository tokenRepository, LoginUserContext loginUserContext) {
         super(key, userDetailsService, tokenRepository);
         this.tokenRepository = tokenRepository;
         this.key = key;
-        this.userRepository = userRepository;
+        this.loginUserContext = loginUserContext;
     }
 
     @Override
@@ -63,7 +62,7 @@ public class CustomRememberMeServices extends PersistentTokenBasedRememberMeServ
 
     @Override
     protected Authentication createSuccessfulAuthentication(HttpServletRequest request, UserDetails user) {
-        User auser = userRepository.findByEmail(user.getUsername());
+        User auser = loginUserContext.loadUser(user.getUsername());
         RememberMeAuthenticationToken auth = new RememberMeAuthenticationToken(key, auser, authoritiesMapper.mapAuthorities(user.getAuthorities()));
         auth.setDetails(authenticationDetailsSource.buildDetails(request));
         return auth;
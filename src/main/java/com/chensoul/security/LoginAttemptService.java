@@ -15,50 +15,115 @@
  */
 package com.chensoul.security;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.chensoul.security.attempt.IpAddresses;
+import com.chensoul.security.attempt.IpRadixTrie;
+import com.chensoul.security.attempt.LoginAttemptStore;
+import com.chensoul.security.attempt.SlidingWindowCounter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Login failures per client address and per surrounding subnet (a /24 or /64 by default), so an attacker
+ * rotating addresses inside one network is still caught. Addresses on the allow-list, such as our own proxies,
+ * are never counted or blocked.
+ */
 @Service
 public class LoginAttemptService {
 
     public static final int MAX_ATTEMPT = 10;
 
-    private LoadingCache<String, Integer> attemptsCache;
-
     private final HttpServletRequest request;
 
-    public LoginAttemptService(HttpServletRequest request) {
-        super();
+    private final ClientIpResolver clientIpResolver;
+
+    private final LoginAttemptStore failures;
+
+    private final int maxAttempts;
+
+    private final int maxSubnetAttempts;
+
+    private final int ipv4Prefix;
+
+    private final int ipv6Prefix;
+
+    private final IpRadixTrie allowList;
+
+    private final Counter blocked;
+
+    public LoginAttemptService(final HttpServletRequest request,
+                               final ClientIpResolver clientIpResolver,
+                               final LoginAttemptStore failures,
+                               @Value("${security.login-attempts.max:" + MAX_ATTEMPT + "}") final int maxAttempts,
+                               @Value("${security.login-attempts.subnet.max:100}") final int maxSubnetAttempts,
+                               @Value("${security.login-attempts.subnet.ipv4-prefix:24}") final int ipv4Prefix,
+                               @Value("${security.login-attempts.subnet.ipv6-prefix:64}") final int ipv6Prefix,
+                               @Value("${security.login-attempts.allow-list:}") final List<String> allowList,
+                               final MeterRegistry meterRegistry) {
         this.request = request;
-        attemptsCache = Caffeine.newBuilder()
-                //创建缓存或者最近一次更新缓存后经过指定时间间隔，刷新缓存；refreshAfterWrite仅支持LoadingCache
-                .refreshAfterWrite(1, TimeUnit.DAYS)
-                .expireAfterWrite(1, TimeUnit.DAYS)
-                .expireAfterAccess(1, TimeUnit.DAYS)
-                .maximumSize(10)
-                .build(key -> 0);
-        ;
+        this.clientIpResolver = clientIpResolver;
+        this.maxAttempts = maxAttempts;
+        this.maxSubnetAttempts = maxSubnetAttempts;
+        this.ipv4Prefix = ipv4Prefix;
+        this.ipv6Prefix = ipv6Prefix;
+        this.allowList = IpRadixTrie.of(allowList);
+        this.failures = failures;
+
+        this.blocked = Counter.builder("security.login-attempts.blocked")
+                .description("Checks that found the client blocked")
+                .register(meterRegistry);
     }
 
     public void loginFailed(final String key) {
-        int attempts;
-        attempts = attemptsCache.get(key);
-        attempts++;
-        attemptsCache.put(key, attempts);
+        loginFailed(key, IpAddresses.parse(key));
+    }
+
+    public void loginFailed(final ClientAddress client) {
+        loginFailed(client.getIp(), client.getAddress());
+    }
+
+    private void loginFailed(final String key, final byte[] address) {
+        if (address == null) {
+            failures.increment(SlidingWindowCounter.hash(key));
+            return;
+        }
+        if (allowList.contains(address)) {
+            return;
+        }
+        failures.increment(SlidingWindowCounter.hash(address, address.length * 8));
+        if (maxSubnetAttempts > 0) {
+            failures.increment(SlidingWindowCounter.hash(address, subnetPrefix(address)));
+        }
     }
 
     public boolean isBlocked() {
-        return attemptsCache.get(getClientIP()) >= MAX_ATTEMPT;
+        return isBlocked(request);
     }
 
-    private String getClientIP() {
-        final String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader!=null) {
-            return xfHeader.split(",")[0];
+    public boolean isBlocked(final HttpServletRequest request) {
+        final ClientAddress client = clientIpResolver.resolve(request);
+        final boolean isBlocked = isBlocked(client.getIp(), client.getAddress());
+        if (isBlocked) {
+            blocked.increment();
         }
-        return request.getRemoteAddr();
+        return isBlocked;
+    }
+
+    private boolean isBlocked(final String ip, final byte[] address) {
+        if (address == null) {
+            return failures.get(SlidingWindowCounter.hash(ip)) >= maxAttempts;
+        }
+        if (allowList.contains(address)) {
+            return false;
+        }
+        return failures.get(SlidingWindowCounter.hash(address, address.length * 8)) >= maxAttempts
+                || maxSubnetAttempts > 0 && failures.get(SlidingWindowCounter.hash(address, subnetPrefix(address))) >= maxSubnetAttempts;
+    }
+
+    private int subnetPrefix(final byte[] address) {
+        return address.length == IpAddresses.IPV4_LENGTH ? ipv4Prefix : ipv6Prefix;
     }
 }
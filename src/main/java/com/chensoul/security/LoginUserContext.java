@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.persistence.model.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Keeps the {@link User} entity loaded for the authentication running on the current request, so the authentication
+ * provider, the user details service, the post-authentication checks and the success handler share a single load.
+ * Outside of a request every call goes to the repository.
+ */
+@RequiredArgsConstructor
+@Component
+public class LoginUserContext {
+    private static final String USER_ATTRIBUTE = LoginUserContext.class.getName() + ".USER";
+
+    private final UserRepository userRepository;
+
+    public User loadUser(final String email) {
+        final User current = getUser(email);
+        if (current != null) {
+            return current;
+        }
+
+        final User user = userRepository.findWithRolesByEmail(email);
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (user != null && attributes != null) {
+            attributes.setAttribute(USER_ATTRIBUTE, user, RequestAttributes.SCOPE_REQUEST);
+        }
+        return user;
+    }
+
+    public User getUser(final String email) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        final Object user = attributes.getAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (user instanceof User && ((User) user).getEmail().equals(email)) {
+            return (User) user;
+        }
+        return null;
+    }
+}
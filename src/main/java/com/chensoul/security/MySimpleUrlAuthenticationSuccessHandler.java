@@ -17,6 +17,7 @@ package com.chensoul.security;
 
 import com.chensoul.persistence.model.User;
 import com.chensoul.service.DeviceService;
+import com.chensoul.service.DeviceVerificationQueue;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
@@ -47,6 +48,8 @@ public class MySimpleUrlAuthenticationSuccessHandler implements AuthenticationSu
 
     private final DeviceService deviceService;
 
+    private final DeviceVerificationQueue deviceVerificationQueue;
+
     private final Environment env;
 
     @Override
@@ -73,11 +76,12 @@ public class MySimpleUrlAuthenticationSuccessHandler implements AuthenticationSu
     private void loginNotification(Authentication authentication, HttpServletRequest request) {
         try {
             if (authentication.getPrincipal() instanceof User && isGeoIpLibEnabled()) {
-                deviceService.verifyDevice(((User) authentication.getPrincipal()), request);
+                // request data and the location from the per-login geo context, usually already resolved by the
+                // location check; the device lookup, writes and mail run on the verification queue
+                deviceVerificationQueue.submit(deviceService.capture((User) authentication.getPrincipal(), request));
             }
         } catch (Exception e) {
-            logger.error("An error occurred while verifying device or location", e);
-            throw new RuntimeException(e);
+            logger.error("An error occurred while queueing device verification", e);
         }
 
     }
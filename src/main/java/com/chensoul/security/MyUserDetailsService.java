@@ -15,29 +15,40 @@
  */
 package com.chensoul.security;
 
+import com.chensoul.persistence.dao.UserAuthorityProjection;
 import com.chensoul.persistence.dao.UserRepository;
-import com.chensoul.persistence.model.Privilege;
-import com.chensoul.persistence.model.Role;
 import com.chensoul.persistence.model.User;
-import java.util.ArrayList;
+import com.chensoul.service.OnUserChangedEvent;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @RequiredArgsConstructor
 @Service("userDetailsService")
 @Transactional
-public class MyUserDetailsService implements UserDetailsService {
+public class MyUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
 
     private final UserRepository userRepository;
     private final LoginAttemptService loginAttemptService;
+    private final CaffeineUserCache userCache;
+    private final RoleAuthorityRegistry roleAuthorityRegistry;
+    private final LoginUserContext loginUserContext;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public UserDetails loadUserByUsername(final String email) throws UsernameNotFoundException {
@@ -45,44 +56,76 @@ public class MyUserDetailsService implements UserDetailsService {
             throw new RuntimeException("blocked");
         }
 
+        final UserDetails cached = userCache.getUserFromCache(email);
+        if (cached != null) {
+            return cached;
+        }
+
+        // the authentication provider has already loaded the entity for this login
+        final User loginUser = loginUserContext.getUser(email);
+        if (loginUser != null) {
+            return cache(new org.springframework.security.core.userdetails.User(loginUser.getEmail(), loginUser.getPassword(), loginUser.isEnabled(), true, true, true, roleAuthorityRegistry.getAuthorities(loginUser.getRoles())));
+        }
+
         try {
-            final User user = userRepository.findByEmail(email);
-            if (user == null) {
+            // one row per role, so the user and its role names come back in a single SELECT
+            final List<UserAuthorityProjection> rows = userRepository.findAuthoritiesByEmail(email);
+            if (rows.isEmpty()) {
                 throw new UsernameNotFoundException("No user found with username: " + email);
             }
 
-            return new org.springframework.security.core.userdetails.User(user.getEmail(), user.getPassword(), user.isEnabled(), true, true, true, getAuthorities(user.getRoles()));
+            final UserAuthorityProjection user = rows.get(0);
+            return cache(new org.springframework.security.core.userdetails.User(user.getEmail(), user.getPassword(), user.isEnabled(), true, true, true, getAuthorities(rows)));
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    // UTIL
+    /**
+     * Re-hashes the password with the current target encoding after a successful login. Runs outside the
+     * login transaction so a failed write only costs the upgrade, never the login itself.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public UserDetails updatePassword(final UserDetails userDetails, final String newPassword) {
+        final User user = loginUserContext.loadUser(userDetails.getUsername());
+        if (user == null) {
+            return userDetails;
+        }
 
-    private Collection<? extends GrantedAuthority> getAuthorities(final Collection<Role> roles) {
-        return getGrantedAuthorities(getPrivileges(roles));
+        final String oldPassword = user.getPassword();
+        user.setPassword(newPassword);
+        try {
+            userRepository.save(user);
+        } catch (final DataAccessException e) {
+            LOGGER.warn("Could not upgrade password hash for {}", userDetails.getUsername(), e);
+            user.setPassword(oldPassword);
+            return userDetails;
+        }
+        eventPublisher.publishEvent(new OnUserChangedEvent(user));
+        return org.springframework.security.core.userdetails.User.withUserDetails(userDetails)
+                .password(newPassword)
+                .build();
     }
 
-    private List<String> getPrivileges(final Collection<Role> roles) {
-        final List<String> privileges = new ArrayList<>();
-        final List<Privilege> collection = new ArrayList<>();
-        for (final Role role : roles) {
-            privileges.add(role.getName());
-            collection.addAll(role.getPrivileges());
+    // UTIL
+
+    private Collection<? extends GrantedAuthority> getAuthorities(final List<UserAuthorityProjection> rows) {
+        if (rows.size() == 1 && rows.get(0).getRoleName() != null) {
+            return roleAuthorityRegistry.getAuthorities(rows.get(0).getRoleName());
         }
-        for (final Privilege item : collection) {
-            privileges.add(item.getName());
+        final Set<String> roleNames = new LinkedHashSet<>();
+        for (final UserAuthorityProjection row : rows) {
+            if (row.getRoleName() != null) {
+                roleNames.add(row.getRoleName());
+            }
         }
-
-        return privileges;
+        return roleAuthorityRegistry.getAuthorities(roleNames);
     }
 
-    private List<GrantedAuthority> getGrantedAuthorities(final List<String> privileges) {
-        final List<GrantedAuthority> authorities = new ArrayList<>();
-        for (final String privilege : privileges) {
-            authorities.add(new SimpleGrantedAuthority(privilege));
-        }
-        return authorities;
+    private UserDetails cache(final UserDetails userDetails) {
+        userCache.putUserInCache(userDetails);
+        return userDetails;
     }
 
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import com.chensoul.web.error.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admission control for password hashing. At most one hash per core runs at a time, a short queue waits
+ * briefly for a slot, and everything beyond that is rejected with {@link TooManyRequestsException} instead of
+ * piling every request thread into BCrypt.
+ */
+@Component
+public class PasswordHashingGate {
+    private final Semaphore permits;
+    private final int maxPermits;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final Duration retryAfter;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public PasswordHashingGate(@Value("${security.password.gate.permits:0}") final int permits,
+                               @Value("${security.password.gate.max-queue:0}") final int maxQueue,
+                               @Value("${security.password.gate.max-wait:500ms}") final Duration maxWait,
+                               @Value("${security.password.gate.retry-after:1s}") final Duration retryAfter,
+                               final MeterRegistry meterRegistry) {
+        this.maxPermits = permits > 0 ? permits : Runtime.getRuntime().availableProcessors();
+        this.maxQueue = maxQueue > 0 ? maxQueue : 2 * maxPermits;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.retryAfter = retryAfter;
+        this.permits = new Semaphore(maxPermits);
+
+        Gauge.builder("security.password.gate.queue", waiting, AtomicInteger::get)
+                .description("Password hashes waiting for a slot")
+                .register(meterRegistry);
+        Gauge.builder("security.password.gate.active", this.permits, p -> maxPermits - p.availablePermits())
+                .description("Password hashes in progress")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("security.password.gate.wait")
+                .description("Time spent waiting for a hashing slot")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("security.password.gate.rejected")
+                .description("Password hashes rejected because the gate was full")
+                .register(meterRegistry);
+    }
+
+    public <T> T execute(final Supplier<T> hashing) {
+        acquire();
+        try {
+            return hashing.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            throw reject();
+        }
+
+        final long start = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            throw reject();
+        }
+    }
+
+    private TooManyRequestsException reject() {
+        rejected.increment();
+        return new TooManyRequestsException("Password hashing capacity exceeded", retryAfter);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security;
+
+import com.chensoul.persistence.OnAuthoritiesChangedEvent;
+import com.chensoul.persistence.dao.RoleRepository;
+import com.chensoul.persistence.model.Privilege;
+import com.chensoul.persistence.model.Role;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Pre-resolved, immutable {@code role name -> authorities} mapping. Every role maps to its own name plus the names of
+ * its privileges, and the same {@link GrantedAuthority} instances are shared by every user holding that role.
+ * <p>
+ * Built from a single query once the application is ready, and rebuilt the same way after every committed change to
+ * a {@link Role} or {@link Privilege}, so no login pays for the load. Until a rebuild lands, lookups see the previous
+ * mapping; if a rebuild fails, the next lookup loads it instead.
+ */
+@RequiredArgsConstructor
+@Component
+public class RoleAuthorityRegistry {
+    private final RoleRepository roleRepository;
+    private final CaffeineUserCache userCache;
+
+    private volatile Snapshot snapshot;
+    private long generation;
+
+    public Set<GrantedAuthority> getAuthorities(final String roleName) {
+        return snapshot().forRole(roleName);
+    }
+
+    public Set<GrantedAuthority> getAuthorities(final Set<String> roleNames) {
+        final Snapshot current = snapshot();
+        if (roleNames.size() == 1) {
+            return current.forRole(roleNames.iterator().next());
+        }
+
+        final Set<GrantedAuthority> authorities = current.byRoles.get(roleNames);
+        if (authorities != null) {
+            return authorities;
+        }
+        final Set<GrantedAuthority> merged = new LinkedHashSet<>();
+        for (final String roleName : roleNames) {
+            merged.addAll(current.forRole(roleName));
+        }
+        final Set<GrantedAuthority> resolved = Set.copyOf(merged);
+        final Set<GrantedAuthority> previous = current.byRoles.putIfAbsent(Set.copyOf(roleNames), resolved);
+        return previous != null ? previous : resolved;
+    }
+
+    public Set<GrantedAuthority> getAuthorities(final Collection<Role> roles) {
+        final Set<String> roleNames = new LinkedHashSet<>();
+        for (final Role role : roles) {
+            roleNames.add(role.getName());
+        }
+        return getAuthorities(roleNames);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild(false);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAuthoritiesChanged(final OnAuthoritiesChangedEvent event) {
+        try {
+            rebuild(true);
+        } finally {
+            // cached principals carry the old authorities
+            userCache.removeAllUsersFromCache();
+        }
+    }
+
+    private Snapshot snapshot() {
+        final Snapshot current = snapshot;
+        return current != null ? current : rebuild(false);
+    }
+
+    /**
+     * @param changed whether a change was committed, so that a load still running from before it must not win
+     */
+    private Snapshot rebuild(final boolean changed) {
+        final long expectedGeneration;
+        synchronized (this) {
+            expectedGeneration = changed ? ++generation : generation;
+        }
+        final Snapshot loaded;
+        try {
+            loaded = new Snapshot(loadAuthorities());
+        } catch (final RuntimeException e) {
+            synchronized (this) {
+                if (expectedGeneration == generation) {
+                    snapshot = null;
+                }
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // a change committed while loading must not be overwritten by what was read before it
+            if (expectedGeneration == generation) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    private Map<String, Set<GrantedAuthority>> loadAuthorities() {
+        final Map<String, GrantedAuthority> interned = new HashMap<>();
+        final Map<String, Set<GrantedAuthority>> byRole = new HashMap<>();
+        for (final Role role : roleRepository.findAllWithPrivileges()) {
+            final Set<GrantedAuthority> authorities = new LinkedHashSet<>();
+            authorities.add(interned.computeIfAbsent(role.getName(), SimpleGrantedAuthority::new));
+            if (role.getPrivileges() != null) {
+                for (final Privilege privilege : role.getPrivileges()) {
+                    authorities.add(interned.computeIfAbsent(privilege.getName(), SimpleGrantedAuthority::new));
+                }
+            }
+            byRole.put(role.getName(), Set.copyOf(authorities));
+        }
+        return Map.copyOf(byRole);
+    }
+
+    private static final class Snapshot {
+        private final Map<String, Set<GrantedAuthority>> byRole;
+        private final Map<Set<String>, Set<GrantedAuthority>> byRoles = new ConcurrentHashMap<>();
+
+        private Snapshot(final Map<String, Set<GrantedAuthority>> byRole) {
+            this.byRole = byRole;
+        }
+
+        private Set<GrantedAuthority> forRole(final String roleName) {
+            final Set<GrantedAuthority> authorities = byRole.get(roleName);
+            return authorities != null ? authorities : Set.of(new SimpleGrantedAuthority(roleName));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+import org.springframework.security.authentication.BadCredentialsException;
+
+/**
+ * The account is in a failure backoff, so the password was not checked. Still a bad-credentials failure, so
+ * the attempt keeps counting against the client IP.
+ */
+public class AccountBackoffException extends BadCredentialsException {
+
+    private static final long serialVersionUID = 3129581623846139011L;
+
+    private final long retryAfterMillis;
+
+    public AccountBackoffException(final long retryAfterMillis) {
+        super("account backoff");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts held by this node only, in a bounded {@link SlidingWindowCounter}. The default store.
+ */
+@Component
+@ConditionalOnProperty(name = "security.login-attempts.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryLoginAttemptStore implements LoginAttemptStore {
+
+    private final SlidingWindowCounter failures;
+
+    public InMemoryLoginAttemptStore(@Value("${security.login-attempts.window:24h}") final Duration window,
+                                     @Value("${security.login-attempts.capacity:1048576}") final int capacity,
+                                     final MeterRegistry meterRegistry) {
+        this.failures = new SlidingWindowCounter(capacity, window);
+
+        Gauge.builder("security.login-attempts.tracked", failures, SlidingWindowCounter::size)
+                .description("Clients and subnets with recorded login failures")
+                .register(meterRegistry);
+        FunctionCounter.builder("security.login-attempts.evicted", failures, SlidingWindowCounter::evictions)
+                .description("Clients dropped from a full table while still counting failures")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long increment(final long key) {
+        return failures.increment(key);
+    }
+
+    @Override
+    public long get(final long key) {
+        return failures.get(key);
+    }
+}
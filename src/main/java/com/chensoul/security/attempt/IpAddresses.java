@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+import java.util.Arrays;
+
+/**
+ * Parses IPv4 and IPv6 literals into raw address bytes without touching DNS.
+ * <p>
+ * IPv4-mapped IPv6 addresses ({@code ::ffff:a.b.c.d}) come back as their 4-byte IPv4 form, so both spellings
+ * of a client count as the same address. Anything that is not a literal, including host names, zone ids and
+ * IPv4 octets with leading zeros, is rejected with {@code null}. Input longer than the longest literal is
+ * rejected before it is scanned, so an oversized header costs nothing.
+ */
+public final class IpAddresses {
+    public static final int IPV4_LENGTH = 4;
+    public static final int IPV6_LENGTH = 16;
+
+    // ffff:ffff:ffff:ffff:ffff:ffff:255.255.255.255
+    private static final int MAX_LITERAL_LENGTH = 45;
+
+    private IpAddresses() {
+    }
+
+    /**
+     * @return 4 or 16 address bytes, or {@code null} if the text is not an IP literal
+     */
+    public static byte[] parse(final CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * Parses the literal between {@code from} (inclusive) and {@code to} (exclusive), ignoring surrounding
+     * blanks, so a list such as a forwarding header can be read in place.
+     */
+    public static byte[] parse(final CharSequence text, final int from, final int to) {
+        final byte[] address = new byte[IPV6_LENGTH];
+        final int length = parse(text, from, to, address);
+        if (length < 0) {
+            return null;
+        }
+        return length == IPV6_LENGTH ? address : Arrays.copyOf(address, length);
+    }
+
+    /**
+     * Like {@link #parse(CharSequence, int, int)}, but writes the address bytes into {@code into}, which must hold
+     * at least {@link #IPV6_LENGTH} bytes, so a caller checking many literals can reuse one buffer.
+     *
+     * @return {@link #IPV4_LENGTH} or {@link #IPV6_LENGTH}, or -1 if the text is not an IP literal
+     */
+    public static int parse(final CharSequence text, int from, int to, final byte[] into) {
+        while (from < to && isBlank(text.charAt(from))) {
+            from++;
+        }
+        while (to > from && isBlank(text.charAt(to - 1))) {
+            to--;
+        }
+        if (from == to || to - from > MAX_LITERAL_LENGTH) {
+            return -1;
+        }
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == ':') {
+                return parseIpv6(text, from, to, into) ? unmap(into) : -1;
+            }
+        }
+        return parseIpv4(text, from, to, into, 0) ? IPV4_LENGTH : -1;
+    }
+
+    /**
+     * Parses {@code address/prefix}, or a bare address as a single-host prefix.
+     *
+     * @return the address bytes with the prefix length appended as one extra byte
+     * @throws IllegalArgumentException if the text is not a valid CIDR block
+     */
+    public static byte[] parseCidr(final String cidr) {
+        final int slash = cidr.indexOf('/');
+        final byte[] address = parse(slash < 0 ? cidr : cidr.substring(0, slash));
+        if (address == null) {
+            throw new IllegalArgumentException("Not an IP address or CIDR block: " + cidr);
+        }
+        int prefixLength = address.length * 8;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(cidr.substring(slash + 1).trim());
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr, e);
+            }
+            if (cidr.indexOf(':') >= 0 && address.length == IPV4_LENGTH) {
+                // a mapped prefix such as ::ffff:10.0.0.0/104 is stored as its IPv4 part
+                prefixLength -= 96;
+            }
+            if (prefixLength < 0 || prefixLength > address.length * 8) {
+                throw new IllegalArgumentException("Invalid prefix length: " + cidr);
+            }
+        }
+        final byte[] result = new byte[address.length + 1];
+        System.arraycopy(address, 0, result, 0, address.length);
+        result[address.length] = (byte) prefixLength;
+        return result;
+    }
+
+    private static boolean parseIpv4(final CharSequence text, final int from, final int to, final byte[] address, final int offset) {
+        int octet = 0;
+        int i = from;
+        while (octet < IPV4_LENGTH) {
+            final int start = i;
+            int value = 0;
+            while (i < to && i - start < 3 && isDigit(text.charAt(i))) {
+                value = value * 10 + (text.charAt(i) - '0');
+                i++;
+            }
+            final int digits = i - start;
+            if (digits == 0 || value > 255 || (digits > 1 && text.charAt(start) == '0')) {
+                return false;
+            }
+            address[offset + octet++] = (byte) value;
+            if (octet < IPV4_LENGTH) {
+                if (i >= to || text.charAt(i) != '.') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return i == to;
+    }
+
+    private static boolean parseIpv6(final CharSequence text, final int from, final int to, final byte[] address) {
+        int groups = 0;
+        int compressedAt = -1;
+        int i = from;
+        if (text.charAt(i) == ':') {
+            if (i + 1 >= to || text.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressedAt = 0;
+            i += 2;
+        }
+        while (i < to) {
+            if (groups == 8) {
+                return false;
+            }
+            final int start = i;
+            int value = 0;
+            int digit;
+            while (i < to && i - start < 4 && (digit = hex(text.charAt(i))) >= 0) {
+                value = (value << 4) | digit;
+                i++;
+            }
+            if (i == start) {
+                return false;
+            }
+            if (i < to && text.charAt(i) == '.') {
+                // trailing dotted IPv4, e.g. ::ffff:192.0.2.1
+                if (groups > 6) {
+                    return false;
+                }
+                if (!parseIpv4(text, start, to, address, groups * 2)) {
+                    return false;
+                }
+                groups += 2;
+                break;
+            }
+            if (i < to && hex(text.charAt(i)) >= 0) {
+                return false;
+            }
+            address[groups * 2] = (byte) (value >>> 8);
+            address[groups * 2 + 1] = (byte) value;
+            groups++;
+            if (i == to) {
+                break;
+            }
+            if (text.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+            if (i < to && text.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = groups;
+                i++;
+            } else if (i == to) {
+                return false;
+            }
+        }
+
+        if (compressedAt < 0) {
+            return groups == 8;
+        }
+        if (groups == 8) {
+            return false;
+        }
+        final int tail = groups - compressedAt;
+        System.arraycopy(address, compressedAt * 2, address, IPV6_LENGTH - tail * 2, tail * 2);
+        for (int b = compressedAt * 2; b < IPV6_LENGTH - tail * 2; b++) {
+            address[b] = 0;
+        }
+        return true;
+    }
+
+    private static boolean isBlank(final char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Moves the IPv4 part of a mapped address to the front of the buffer.
+     *
+     * @return the length of the address now in the buffer
+     */
+    private static int unmap(final byte[] address) {
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return IPV6_LENGTH;
+            }
+        }
+        if (address[10] != (byte) 0xff || address[11] != (byte) 0xff) {
+            return IPV6_LENGTH;
+        }
+        System.arraycopy(address, 12, address, 0, IPV4_LENGTH);
+        return IPV4_LENGTH;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int hex(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Binary radix trie over raw IPv4 and IPv6 address bits, answering "is this address inside any of these CIDR
+ * blocks" in at most prefix-length steps with no allocation.
+ * <p>
+ * Nodes are parallel int arrays rather than objects. The trie is built once from {@link #of(Collection)} and is
+ * read-only afterwards, so it can be shared between threads.
+ */
+public final class IpRadixTrie {
+    private static final int ROOT_V4 = 0;
+    private static final int ROOT_V6 = 1;
+    private static final int NONE = 0;
+
+    private int[] children = new int[32];
+    private int[] prefixLengths = new int[16];
+    private int size = 2;
+
+    private IpRadixTrie() {
+        Arrays.fill(prefixLengths, -1);
+    }
+
+    /**
+     * @param cidrs blocks such as {@code 10.0.0.0/8} or {@code 2001:db8::/32}; bare addresses match only themselves
+     */
+    public static IpRadixTrie of(final Collection<String> cidrs) {
+        final IpRadixTrie trie = new IpRadixTrie();
+        for (final String cidr : cidrs) {
+            if (cidr != null && !cidr.isBlank()) {
+                final byte[] parsed = IpAddresses.parseCidr(cidr.trim());
+                trie.add(parsed, parsed.length - 1, parsed[parsed.length - 1] & 0xff);
+            }
+        }
+        return trie;
+    }
+
+    public boolean isEmpty() {
+        return size == 2 && prefixLengths[ROOT_V4] < 0 && prefixLengths[ROOT_V6] < 0;
+    }
+
+    public boolean contains(final byte[] address) {
+        return longestMatch(address) >= 0;
+    }
+
+    /**
+     * @param length the number of address bytes at the start of {@code address}, as returned by
+     *               {@link IpAddresses#parse(CharSequence, int, int, byte[])}
+     */
+    public boolean contains(final byte[] address, final int length) {
+        return longestMatch(address, length) >= 0;
+    }
+
+    /**
+     * @return the length of the longest block containing the address, or -1 if none does
+     */
+    public int longestMatch(final byte[] address) {
+        if (address == null) {
+            return -1;
+        }
+        return longestMatch(address, address.length);
+    }
+
+    private int longestMatch(final byte[] address, final int length) {
+        int node = root(length);
+        if (node < 0) {
+            return -1;
+        }
+        int longest = prefixLengths[node];
+        final int bits = length * 8;
+        for (int bit = 0; bit < bits; bit++) {
+            node = children[2 * node + bitAt(address, bit)];
+            if (node == NONE) {
+                break;
+            }
+            if (prefixLengths[node] >= 0) {
+                longest = prefixLengths[node];
+            }
+        }
+        return longest;
+    }
+
+    private void add(final byte[] address, final int length, final int prefixLength) {
+        int node = root(length);
+        for (int bit = 0; bit < prefixLength; bit++) {
+            final int slot = 2 * node + bitAt(address, bit);
+            if (children[slot] == NONE) {
+                // newNode() may grow the arrays, so it must run before the store
+                final int child = newNode();
+                children[slot] = child;
+            }
+            node = children[slot];
+        }
+        prefixLengths[node] = prefixLength;
+    }
+
+    private int newNode() {
+        if (size == prefixLengths.length) {
+            children = Arrays.copyOf(children, children.length * 2);
+            prefixLengths = Arrays.copyOf(prefixLengths, prefixLengths.length * 2);
+            Arrays.fill(prefixLengths, size, prefixLengths.length, -1);
+        }
+        return size++;
+    }
+
+    private static int root(final int length) {
+        if (length == IpAddresses.IPV4_LENGTH) {
+            return ROOT_V4;
+        }
+        return length == IpAddresses.IPV6_LENGTH ? ROOT_V6 : -1;
+    }
+
+    private static int bitAt(final byte[] address, final int bit) {
+        return (address[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+    }
+}
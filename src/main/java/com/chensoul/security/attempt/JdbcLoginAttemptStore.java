@@ -0,0 +1,293 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Counts shared by all nodes through the {@code login_attempt} table.
+ * <p>
+ * Counting and reading never wait for the database. Failures are buffered per key and written by {@link #flush()}
+ * in one batch per interval. Reads combine the buffer with a local cache of the cluster-wide counts. A key is only
+ * looked up in the table once it has failed on this node, so the block check for a client that never failed here,
+ * such as an attacker rotating addresses, costs no query. The row then loads in the background, and cached keys
+ * are reloaded once they are older than the refresh interval. A client that has failed only on other nodes is
+ * therefore caught here from its first failure here, and other nodes' failures of a cached key show up one
+ * refresh late.
+ * <p>
+ * Counts taken out of the buffer by a flush stay readable as in-flight writes until the cache holds a value that
+ * was loaded after they were committed, so a node never loses sight of its own failures in between.
+ */
+@Component
+@ConditionalOnProperty(name = "security.login-attempts.store", havingValue = "jdbc")
+public class JdbcLoginAttemptStore implements LoginAttemptStore {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private static final String SELECT = "SELECT window_start, failures FROM login_attempt WHERE attempt_key = ? AND window_start >= ?";
+    private static final String UPSERT_MYSQL = "INSERT INTO login_attempt (attempt_key, window_start, failures) VALUES (?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE failures = failures + ?";
+    private static final String UPSERT_MERGE = "MERGE INTO login_attempt a"
+            + " USING (SELECT CAST(? AS BIGINT) attempt_key, CAST(? AS BIGINT) window_start, CAST(? AS BIGINT) failures) n"
+            + " ON (a.attempt_key = n.attempt_key AND a.window_start = n.window_start)"
+            + " WHEN MATCHED THEN UPDATE SET failures = a.failures + n.failures"
+            + " WHEN NOT MATCHED THEN INSERT (attempt_key, window_start, failures) VALUES (n.attempt_key, n.window_start, n.failures)";
+    private static final String PURGE = "DELETE FROM login_attempt WHERE window_start < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long windowMillis;
+    private final LongSupplier clock;
+
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Written> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong writes = new AtomicLong();
+    private final LoadingCache<Long, Shared> cluster;
+    // chosen on the first flush, which may run long after startup if the database was down then
+    private String upsert;
+
+    private final Counter flushed;
+    private final Counter flushFailures;
+
+    @Autowired
+    public JdbcLoginAttemptStore(final JdbcTemplate jdbcTemplate,
+                                 final PlatformTransactionManager transactionManager,
+                                 @Value("${security.login-attempts.window:24h}") final Duration window,
+                                 @Value("${security.login-attempts.jdbc.cache-size:100000}") final int cacheSize,
+                                 @Value("${security.login-attempts.jdbc.refresh:5s}") final Duration refresh,
+                                 final MeterRegistry meterRegistry) {
+        this(jdbcTemplate, transactionManager, window, cacheSize, refresh, meterRegistry, System::currentTimeMillis);
+    }
+
+    public JdbcLoginAttemptStore(final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager, final Duration window, final int cacheSize,
+                                 final Duration refresh, final MeterRegistry meterRegistry, final LongSupplier clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.windowMillis = window.toMillis();
+        this.clock = clock;
+        this.cluster = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .refreshAfterWrite(refresh)
+                .expireAfterAccess(window)
+                .build(this::load);
+
+        Gauge.builder("security.login-attempts.pending", pending, ConcurrentHashMap::size)
+                .description("Keys with failures not yet written to the shared store")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("security.login-attempts.flushed")
+                .description("Rows written to the shared store")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("security.login-attempts.flush.failures")
+                .description("Flushes that could not be written and were kept for the next one")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public long increment(final long key) {
+        pending.merge(key, 1L, Long::sum);
+        return get(key);
+    }
+
+    @Override
+    public long get(final long key) {
+        final Shared shared = cluster.getIfPresent(key);
+        if (shared == null) {
+            final long local = unwritten(key, -1) + pending.getOrDefault(key, 0L);
+            if (local > 0) {
+                cluster.refresh(key);
+            }
+            return local;
+        }
+        return shared.failures + unwritten(key, shared.writes) + pending.getOrDefault(key, 0L);
+    }
+
+    /**
+     * Writes the buffered failures to the current window as one batched upsert in one transaction: INSERT ... ON
+     * DUPLICATE KEY UPDATE on MySQL and MariaDB, MERGE elsewhere. Neither needs the driver's update counts, which
+     * MySQL does not report for batches rewritten under {@code rewriteBatchedStatements}. If another node inserts
+     * one of the rows during a MERGE, the batch is retried once and that row is then updated. On failure the counts
+     * go back into the buffer.
+     */
+    @Scheduled(fixedDelayString = "${security.login-attempts.jdbc.flush-interval:1s}")
+    public synchronized void flush() {
+        prune();
+        if (pending.isEmpty()) {
+            return;
+        }
+        final long windowStart = clock.getAsLong() / windowMillis * windowMillis;
+        final List<Object[]> rows = new ArrayList<>(pending.size());
+        final List<Written> written = new ArrayList<>(pending.size());
+        final long writtenAt = clock.getAsLong();
+        for (final Long key : pending.keySet()) {
+            // moved under the lock of the pending entry, so reads see the count in one place or the other
+            pending.computeIfPresent(key, (k, count) -> {
+                written.add(inFlight.compute(k, (ignored, previous) -> new Written(count, writtenAt, previous)));
+                rows.add(new Object[]{k, windowStart, count});
+                return null;
+            });
+        }
+
+        try {
+            try {
+                write(rows);
+            } catch (final DuplicateKeyException e) {
+                write(rows);
+            }
+            final long committed = writes.incrementAndGet();
+            for (final Written write : written) {
+                write.seq = committed;
+            }
+            flushed.increment(rows.size());
+        } catch (final DataAccessException e) {
+            LOGGER.warn("Could not write {} login attempt counts, keeping them for the next flush", rows.size(), e);
+            flushFailures.increment();
+            for (int i = 0; i < rows.size(); i++) {
+                final Long key = (Long) rows.get(i)[0];
+                final Written write = written.get(i);
+                pending.merge(key, write.count, Long::sum);
+                inFlight.computeIfPresent(key, (k, head) -> head == write ? write.previous : head);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${security.login-attempts.jdbc.purge-interval:1h}")
+    public void purge() {
+        final long currentWindow = clock.getAsLong() / windowMillis * windowMillis;
+        final int purged = jdbcTemplate.update(PURGE, currentWindow - windowMillis);
+        LOGGER.debug("Purged {} expired login attempt rows", purged);
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private void write(final List<Object[]> rows) {
+        final String sql = upsert();
+        final List<Object[]> args;
+        if (sql == UPSERT_MYSQL) {
+            args = new ArrayList<>(rows.size());
+            for (final Object[] row : rows) {
+                args.add(new Object[]{row[0], row[1], row[2], row[2]});
+            }
+        } else {
+            args = rows;
+        }
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, args));
+    }
+
+    private String upsert() {
+        if (upsert == null) {
+            final String product = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+            upsert = "MySQL".equals(product) || "MariaDB".equals(product) ? UPSERT_MYSQL : UPSERT_MERGE;
+        }
+        return upsert;
+    }
+
+    private Shared load(final Long key) {
+        // taken before the query, so every write counted as seen is in its result
+        final long seen = writes.get();
+        final long now = clock.getAsLong();
+        final long currentWindow = now / windowMillis * windowMillis;
+        final long[] counts = new long[2];
+        jdbcTemplate.query(SELECT, rs -> {
+            counts[rs.getLong(1) == currentWindow ? 0 : 1] += rs.getLong(2);
+        }, key, currentWindow - windowMillis);
+        final long remaining = windowMillis - now % windowMillis;
+        return new Shared(counts[1] * remaining / windowMillis + counts[0], seen);
+    }
+
+    /**
+     * @return the flushed counts of the key that a cached value loaded after {@code seen} writes does not hold
+     */
+    private long unwritten(final long key, final long seen) {
+        long count = 0;
+        for (Written write = inFlight.get(key); write != null && write.seq > seen; write = write.previous) {
+            count += write.count;
+        }
+        return count;
+    }
+
+    /**
+     * Drops in-flight writes the cache has caught up with, and those of uncached keys once they are a window old.
+     */
+    private void prune() {
+        final long expired = clock.getAsLong() - windowMillis;
+        for (final Long key : inFlight.keySet()) {
+            final Shared shared = cluster.getIfPresent(key);
+            inFlight.computeIfPresent(key, (k, head) -> {
+                Written write = head;
+                Written last = null;
+                while (write != null && write.seq > (shared == null ? -1 : shared.writes) && (shared != null || write.writtenAt > expired)) {
+                    last = write;
+                    write = write.previous;
+                }
+                if (last == null) {
+                    return null;
+                }
+                last.previous = null;
+                return head;
+            });
+        }
+    }
+
+    private static final class Written {
+        private final long count;
+        private final long writtenAt;
+        // uncommitted writes are newer than anything the cache can have seen
+        private volatile long seq = Long.MAX_VALUE;
+        private volatile Written previous;
+
+        private Written(final long count, final long writtenAt, final Written previous) {
+            this.count = count;
+            this.writtenAt = writtenAt;
+            this.previous = previous;
+        }
+    }
+
+    private static final class Shared {
+        private final long failures;
+        private final long writes;
+
+        private Shared(final long failures, final long writes) {
+            this.failures = failures;
+            this.writes = writes;
+        }
+    }
+}
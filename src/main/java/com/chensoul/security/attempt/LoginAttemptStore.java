@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+/**
+ * Where login failure counts are kept. Keys are the 64-bit hashes the attempt service derives from client
+ * addresses and subnets; counts are over a sliding window.
+ * <p>
+ * {@link #get(long)} sits on every login request and must not block on I/O.
+ */
+public interface LoginAttemptStore {
+
+    /**
+     * Records one failure for the key.
+     *
+     * @return the sliding count including this failure, as far as this node knows it
+     */
+    long increment(long key);
+
+    /**
+     * @return the sliding count for the key, 0 if it is not tracked
+     */
+    long get(long key);
+}
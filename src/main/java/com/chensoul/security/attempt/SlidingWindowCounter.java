@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.attempt;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-size table of event counters over a sliding window, keyed by 64-bit hashes.
+ * <p>
+ * Each key takes two longs: its hash, and a packed word holding the current window index with the counts of
+ * the current and the previous window. The sliding count is the previous window weighted by how much of it
+ * still overlaps, plus the current one. Updates are lock-free CAS loops on the packed word.
+ * <p>
+ * Keys live within a short linear probe run. Slots whose counts have fully expired are reused first; when a run
+ * has none, the key with the lowest count is evicted, so memory stays at the configured capacity no matter how
+ * many distinct keys are seen. Counts are therefore approximate for keys being evicted or reused concurrently.
+ */
+public class SlidingWindowCounter {
+    private static final int COUNT_BITS = 20;
+    private static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+    private static final int WINDOW_SHIFT = 2 * COUNT_BITS;
+    private static final long WINDOW_MASK = (1L << (Long.SIZE - WINDOW_SHIFT)) - 1;
+    private static final int MAX_PROBES = 16;
+    private static final long EMPTY = 0;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray counters;
+    private final int mask;
+    private final long windowMillis;
+    private final LongSupplier clock;
+    private final AtomicInteger occupied = new AtomicInteger();
+    private final LongAdder evictions = new LongAdder();
+
+    public SlidingWindowCounter(final int capacity, final Duration window) {
+        this(capacity, window, System::currentTimeMillis);
+    }
+
+    public SlidingWindowCounter(final int capacity, final Duration window, final LongSupplier clock) {
+        if (capacity < MAX_PROBES) {
+            throw new IllegalArgumentException("capacity must be at least " + MAX_PROBES);
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.keys = new AtomicLongArray(size);
+        this.counters = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.windowMillis = window.toMillis();
+        this.clock = clock;
+    }
+
+    /**
+     * Hashes a string key to the 64-bit form used by this table; never returns the reserved empty value.
+     */
+    public static long hash(final CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Hashes the first {@code prefixLength} bits of a raw IP address, so every address inside the same prefix
+     * maps to the same key.
+     */
+    public static long hash(final byte[] address, final int prefixLength) {
+        long h = 0xcbf29ce484222325L ^ ((long) address.length << 8 | prefixLength);
+        h *= 0x100000001b3L;
+        final int fullBytes = prefixLength >>> 3;
+        for (int i = 0; i < fullBytes; i++) {
+            h ^= address[i] & 0xff;
+            h *= 0x100000001b3L;
+        }
+        final int remainingBits = prefixLength & 7;
+        if (remainingBits != 0) {
+            h ^= address[fullBytes] & (0xff << (8 - remainingBits)) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Records one event for the key.
+     *
+     * @return the sliding count including this event
+     */
+    public long increment(final long key) {
+        final long now = clock.getAsLong();
+        final long window = window(now);
+        final int slot = slotFor(key, now);
+        long packed;
+        long next;
+        do {
+            packed = counters.get(slot);
+            next = roll(packed, window);
+            if ((next & MAX_COUNT) < MAX_COUNT) {
+                next++;
+            }
+        } while (!counters.compareAndSet(slot, packed, next));
+        return estimate(next, now);
+    }
+
+    /**
+     * @return the sliding count for the key, 0 if it is not tracked
+     */
+    public long get(final long key) {
+        final int start = index(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (start + probe) & mask;
+            final long current = keys.get(slot);
+            if (current == key) {
+                return estimate(counters.get(slot), clock.getAsLong());
+            }
+            if (current == EMPTY) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forgets the events recorded for the key.
+     */
+    public void reset(final long key) {
+        final int start = index(key);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (start + probe) & mask;
+            final long current = keys.get(slot);
+            if (current == key) {
+                counters.set(slot, 0);
+                return;
+            }
+            if (current == EMPTY) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return slots holding a key, including keys whose counts have expired but were not reused yet
+     */
+    public int size() {
+        return occupied.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return keys pushed out while they still had a non-zero count
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private int slotFor(final long key, final long now) {
+        final int start = index(key);
+        for (;;) {
+            int candidate = -1;
+            long candidateKey = EMPTY;
+            int victim = -1;
+            long victimKey = EMPTY;
+            long victimCount = Long.MAX_VALUE;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                final int slot = (start + probe) & mask;
+                final long current = keys.get(slot);
+                if (current == key) {
+                    return slot;
+                }
+                if (current == EMPTY) {
+                    if (candidate < 0) {
+                        candidate = slot;
+                        candidateKey = EMPTY;
+                    }
+                    break;
+                }
+                if (candidate < 0) {
+                    final long count = estimate(counters.get(slot), now);
+                    if (count == 0) {
+                        candidate = slot;
+                        candidateKey = current;
+                    } else if (count < victimCount) {
+                        victim = slot;
+                        victimKey = current;
+                        victimCount = count;
+                    }
+                }
+            }
+
+            final boolean evicting = candidate < 0;
+            if (evicting) {
+                candidate = victim;
+                candidateKey = victimKey;
+            }
+            if (keys.compareAndSet(candidate, candidateKey, key)) {
+                counters.set(candidate, 0);
+                if (candidateKey == EMPTY) {
+                    occupied.incrementAndGet();
+                } else if (evicting) {
+                    evictions.increment();
+                }
+                return candidate;
+            }
+        }
+    }
+
+    private long window(final long now) {
+        return (now / windowMillis) & WINDOW_MASK;
+    }
+
+    private long roll(final long packed, final long window) {
+        final long stored = packed >>> WINDOW_SHIFT;
+        if (stored == window) {
+            return packed;
+        }
+        final long carried = ((stored + 1) & WINDOW_MASK) == window ? packed & MAX_COUNT : 0;
+        return (window << WINDOW_SHIFT) | (carried << COUNT_BITS);
+    }
+
+    private long estimate(final long packed, final long now) {
+        final long rolled = roll(packed, window(now));
+        final long current = rolled & MAX_COUNT;
+        final long previous = (rolled >>> COUNT_BITS) & MAX_COUNT;
+        final long remaining = windowMillis - now % windowMillis;
+        return previous * remaining / windowMillis + current;
+    }
+
+    private int index(final long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1 : h;
+    }
+}
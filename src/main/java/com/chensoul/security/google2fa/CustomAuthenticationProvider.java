@@ -15,11 +15,14 @@
  */
 package com.chensoul.security.google2fa;
 
-import com.chensoul.persistence.dao.UserRepository;
 import com.chensoul.persistence.model.User;
+import com.chensoul.security.AccountAttemptService;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.attempt.AccountBackoffException;
+import com.chensoul.web.error.TooManyRequestsException;
 import lombok.RequiredArgsConstructor;
-import org.jboss.aerogear.security.otp.Totp;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.core.Authentication;
@@ -29,34 +32,43 @@ import org.springframework.security.core.AuthenticationException;
 @RequiredArgsConstructor
 public class CustomAuthenticationProvider extends DaoAuthenticationProvider {
 
-    private final UserRepository userRepository;
+    private final LoginUserContext loginUserContext;
+    private final TotpVerifier totpVerifier;
+    private final AccountAttemptService accountAttemptService;
 
     @Override
     public Authentication authenticate(Authentication auth) throws AuthenticationException {
-        final User user = userRepository.findByEmail(auth.getName());
+        final long backoffMillis = accountAttemptService.getBackoffMillis(auth.getName());
+        if (backoffMillis > 0) {
+            throw new AccountBackoffException(backoffMillis);
+        }
+        final User user = loginUserContext.loadUser(auth.getName());
         if ((user==null)) {
             throw new BadCredentialsException("Invalid username or password");
         }
         // to verify verification code
+        long totpStep = -1;
         if (user.isUsing2FA()) {
             final String verificationCode = ((CustomWebAuthenticationDetails) auth.getDetails()).getVerificationCode();
-            final Totp totp = new Totp(user.getSecret());
-            if (!isValidLong(verificationCode) || !totp.verify(verificationCode)) {
+            totpStep = totpVerifier.match(user, verificationCode);
+            if (totpStep < 0) {
                 throw new BadCredentialsException("Invalid verification code");
             }
 
         }
-        final Authentication result = super.authenticate(auth);
-        return new UsernamePasswordAuthenticationToken(user, result.getCredentials(), result.getAuthorities());
-    }
-
-    private boolean isValidLong(String code) {
+        final Authentication result;
         try {
-            Long.parseLong(code);
-        } catch (final NumberFormatException e) {
-            return false;
+            result = super.authenticate(auth);
+        } catch (final TooManyRequestsException e) {
+            // shed load; not a failed attempt against the account or the client
+            throw new InternalAuthenticationServiceException(e.getMessage(), e);
+        }
+        // consume the code only once the password matched, so a typo does not burn it
+        if (user.isUsing2FA() && !totpVerifier.markUsed(user.getEmail(), totpStep)) {
+            throw new BadCredentialsException("Invalid verification code");
         }
-        return true;
+        accountAttemptService.loginSucceeded(user.getEmail());
+        return new UsernamePasswordAuthenticationToken(user, result.getCredentials(), result.getAuthorities());
     }
 
     @Override
@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.google2fa;
+
+import com.chensoul.persistence.model.User;
+import com.chensoul.service.OnUserChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.jboss.aerogear.security.otp.api.Base32;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * RFC 6238 verification compatible with the aerogear {@code Totp} codes shown to users (HmacSHA1, 30 second
+ * steps, 6 digits), accepting one step of clock drift either way.
+ * <p>
+ * Decoded keys are cached per user and dropped whenever the user changes, each thread reuses its own
+ * {@link Mac} and buffers, and a code is only consumed once: a step at or before the last one used by the
+ * same user is rejected.
+ */
+@Component
+public class TotpVerifier {
+    private static final String ALGORITHM = "HmacSHA1";
+    private static final long STEP_MILLIS = 30_000;
+    private static final int DIGITS = 6;
+    private static final int MODULUS = 1_000_000;
+    private static final int WINDOW = 1;
+
+    private static final ThreadLocal<Hotp> HOTP = ThreadLocal.withInitial(Hotp::new);
+
+    private final Clock clock;
+    private final Cache<String, UserKey> keys;
+    private final Cache<String, AtomicLong> lastUsedSteps;
+
+    @Autowired
+    public TotpVerifier(@Value("${security.totp.cache.maximum-size:10000}") final long maximumSize) {
+        this(maximumSize, Clock.systemUTC());
+    }
+
+    public TotpVerifier(final long maximumSize, final Clock clock) {
+        this.clock = clock;
+        this.keys = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+        // a step older than this is outside the window anyway
+        this.lastUsedSteps = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis((2 * WINDOW + 2) * STEP_MILLIS))
+                .build();
+    }
+
+    /**
+     * Verifies and consumes the code in one go.
+     */
+    public boolean verify(final User user, final String code) {
+        final long step = match(user, code);
+        return step >= 0 && markUsed(user.getEmail(), step);
+    }
+
+    /**
+     * @return the time step the code belongs to, or -1 if it is malformed, outside the window or already used
+     */
+    public long match(final User user, final String code) {
+        final int expected = parse(code);
+        final SecretKeySpec key = key(user);
+        if (expected < 0 || key == null) {
+            return -1;
+        }
+
+        final long current = clock.millis() / STEP_MILLIS;
+        final AtomicLong lastUsed = lastUsedSteps.getIfPresent(user.getEmail());
+        final long notAfter = lastUsed == null ? Long.MIN_VALUE : lastUsed.get();
+        final Hotp hotp = HOTP.get();
+        for (long step = current - WINDOW; step <= current + WINDOW; step++) {
+            if (step > notAfter && hotp.generate(key, step) == expected) {
+                return step;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records the step as used, failing if it or a later step was used first.
+     */
+    public boolean markUsed(final String email, final long step) {
+        final AtomicLong lastUsed = lastUsedSteps.get(email, k -> new AtomicLong(Long.MIN_VALUE));
+        long previous;
+        do {
+            previous = lastUsed.get();
+            if (previous >= step) {
+                return false;
+            }
+        } while (!lastUsed.compareAndSet(previous, step));
+        return true;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(final OnUserChangedEvent event) {
+        keys.invalidate(event.getUser().getEmail());
+    }
+
+    private SecretKeySpec key(final User user) {
+        final String secret = user.getSecret();
+        if (secret == null) {
+            return null;
+        }
+        UserKey key = keys.getIfPresent(user.getEmail());
+        if (key == null || !key.secret().equals(secret)) {
+            key = decode(secret);
+            if (key == null) {
+                return null;
+            }
+            keys.put(user.getEmail(), key);
+        }
+        return key.key();
+    }
+
+    private static UserKey decode(final String secret) {
+        try {
+            return new UserKey(secret, new SecretKeySpec(Base32.decode(secret), ALGORITHM));
+        } catch (final Base32.DecodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int parse(final String code) {
+        if (code == null || code.length() != DIGITS) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < DIGITS; i++) {
+            final char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private record UserKey(String secret, SecretKeySpec key) {
+    }
+
+    /**
+     * Per-thread HMAC state; re-keyed only when consecutive calls on a thread are for different users.
+     */
+    private static final class Hotp {
+        private final Mac mac;
+        private final byte[] counter = new byte[8];
+        private final byte[] digest;
+        private SecretKeySpec currentKey;
+
+        Hotp() {
+            try {
+                mac = Mac.getInstance(ALGORITHM);
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            digest = new byte[mac.getMacLength()];
+        }
+
+        int generate(final SecretKeySpec key, final long step) {
+            try {
+                if (key != currentKey) {
+                    mac.init(key);
+                    currentKey = key;
+                }
+                long value = step;
+                for (int i = counter.length - 1; i >= 0; i--) {
+                    counter[i] = (byte) value;
+                    value >>>= 8;
+                }
+                mac.update(counter);
+                mac.doFinal(digest, 0);
+            } catch (final GeneralSecurityException e) {
+                currentKey = null;
+                throw new IllegalStateException(e);
+            }
+
+            final int offset = digest[digest.length - 1] & 0xf;
+            final int binary = ((digest[offset] & 0x7f) << 24)
+                    | ((digest[offset + 1] & 0xff) << 16)
+                    | ((digest[offset + 2] & 0xff) << 8)
+                    | (digest[offset + 3] & 0xff);
+            return binary % MODULUS;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.location;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable set of ISO 3166-1 alpha-2 country codes, one bit per possible two-letter code.
+ * <p>
+ * Indexing the full {@code AA}–{@code ZZ} space rather than the officially assigned codes keeps user-assigned
+ * codes such as {@code XK} (Kosovo) representable, at 88 bytes per set.
+ */
+public final class CountrySet {
+    public static final CountrySet EMPTY = new CountrySet(new long[(26 * 26 + 63) / 64]);
+
+    private final long[] bits;
+
+    private CountrySet(final long[] bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Codes that are not two ASCII letters are skipped.
+     */
+    public static CountrySet of(final Collection<String> countryCodes) {
+        final long[] bits = EMPTY.bits.clone();
+        for (final String code : countryCodes) {
+            final int index = index(code);
+            if (index >= 0) {
+                bits[index >>> 6] |= 1L << index;
+            }
+        }
+        return new CountrySet(bits);
+    }
+
+    public boolean contains(final String countryCode) {
+        final int index = index(countryCode);
+        return index >= 0 && (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @return a set that also contains the code, or this one if it already does or the code is invalid
+     */
+    public CountrySet with(final String countryCode) {
+        final int index = index(countryCode);
+        if (index < 0 || contains(countryCode)) {
+            return this;
+        }
+        final long[] copy = bits.clone();
+        copy[index >>> 6] |= 1L << index;
+        return new CountrySet(copy);
+    }
+
+    public int size() {
+        int size = 0;
+        for (final long word : bits) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * @return 0 to 675 for {@code AA} to {@code ZZ} in either case, otherwise -1
+     */
+    static int index(final String countryCode) {
+        if (countryCode == null || countryCode.length() != 2) {
+            return -1;
+        }
+        final int first = letter(countryCode.charAt(0));
+        final int second = letter(countryCode.charAt(1));
+        return first < 0 || second < 0 ? -1 : first * 26 + second;
+    }
+
+    private static int letter(final char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        return c >= 'a' && c <= 'z' ? c - 'a' : -1;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof CountrySet && Arrays.equals(bits, ((CountrySet) o).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bits);
+    }
+}
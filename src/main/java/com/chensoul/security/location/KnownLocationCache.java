@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.location;
+
+import com.chensoul.persistence.dao.UserLocationRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * The countries each user has confirmed logging in from, kept as a {@link CountrySet} per user id.
+ * <p>
+ * A user's set is loaded with one query on their first login and then only grows, so the usual login from a
+ * known country is a bit test. A miss is not trusted: the caller checks the database before treating the
+ * country as new, which also covers locations confirmed on another node.
+ */
+@Component
+public class KnownLocationCache {
+
+    private final UserLocationRepository userLocationRepository;
+    private final Cache<Long, CountrySet> cache;
+
+    public KnownLocationCache(final UserLocationRepository userLocationRepository,
+                              @Value("${security.known-locations.cache.maximum-size:100000}") final long maximumSize,
+                              @Value("${security.known-locations.cache.expire-after-access:1h}") final Duration expireAfterAccess,
+                              final MeterRegistry meterRegistry) {
+        this.userLocationRepository = userLocationRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "knownLocations");
+    }
+
+    public boolean isKnown(final Long userId, final String countryCode) {
+        return cache.get(userId, id -> CountrySet.of(userLocationRepository.findEnabledCountryCodesByUserId(id))).contains(countryCode);
+    }
+
+    /**
+     * Records a confirmed country for a user whose set is loaded; otherwise the next load reads it anyway.
+     */
+    public void add(final Long userId, final String countryCode) {
+        cache.asMap().computeIfPresent(userId, (id, countries) -> countries.with(countryCode));
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.security.location;
+
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.service.GeoIpService;
+import com.chensoul.service.GeoLocation;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Locates the client of the current login once, so the location check and the device verification share one
+ * GeoIP lookup for the address {@link ClientIpResolver} resolved.
+ */
+@RequiredArgsConstructor
+@Component
+public class LoginGeoContext {
+    private static final String ATTRIBUTE = LoginGeoContext.class.getName() + ".LOCATION";
+
+    private final ClientIpResolver clientIpResolver;
+    private final GeoIpService geoIpService;
+
+    /**
+     * @return the client's location, {@link GeoLocation#UNKNOWN} if it cannot be determined
+     */
+    public GeoLocation locate(final HttpServletRequest request) {
+        final Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached instanceof GeoLocation) {
+            return (GeoLocation) cached;
+        }
+        final GeoLocation location = geoIpService.locate(clientIpResolver.resolve(request).getAddress());
+        if (location == null) {
+            // the lookup failed; not cached, so a later step may still succeed
+            return GeoLocation.UNKNOWN;
+        }
+        request.setAttribute(ATTRIBUTE, location);
+        return location;
+    }
+}
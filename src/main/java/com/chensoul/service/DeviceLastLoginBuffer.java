@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces the last login time of known devices in memory and writes them in one batched UPDATE per interval,
+ * so a login from a known device costs no write of its own.
+ * <p>
+ * Only the latest time per device is kept, and a row is never moved back to an earlier time, so flushes from
+ * several nodes can interleave freely. {@code device.last-login.max-staleness} is the flush interval: a stored time
+ * lags by about that much, plus however long the flush waits for a scheduler thread
+ * ({@code spring.task.scheduling.pool.size}) and for the database. While the database is unavailable the buffer is
+ * kept, and only the scheduled flush retries it until one succeeds, so a full buffer does not re-run a failing
+ * batch on every login.
+ */
+@Component
+public class DeviceLastLoginBuffer {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private static final String UPDATE = "UPDATE device_metadata SET last_logged_in = ? WHERE id = ? AND (last_logged_in IS NULL OR last_logged_in < ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxPending;
+
+    private final ConcurrentHashMap<Long, Long> pending = new ConcurrentHashMap<>();
+    // set by a failed flush; early flushes then wait for the next scheduled one to get through
+    private volatile boolean failing;
+
+    private final Counter flushed;
+    private final Counter flushFailures;
+
+    public DeviceLastLoginBuffer(final JdbcTemplate jdbcTemplate,
+                                 @Value("${device.last-login.max-pending:10000}") final int maxPending,
+                                 final MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxPending = maxPending;
+
+        Gauge.builder("device.last-login.pending", pending, ConcurrentHashMap::size)
+                .description("Devices whose last login time is not yet written")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("device.last-login.flushed")
+                .description("Last login times written to the database")
+                .register(meterRegistry);
+        this.flushFailures = Counter.builder("device.last-login.flush.failures")
+                .description("Flushes that could not be written and were kept for the next one")
+                .register(meterRegistry);
+    }
+
+    public void touch(final Long deviceId, final Date loggedIn) {
+        if (deviceId == null || loggedIn == null) {
+            return;
+        }
+        pending.merge(deviceId, loggedIn.getTime(), Math::max);
+        if (pending.size() >= maxPending && !failing) {
+            // usually on a login-notification thread, but on the login thread itself under the caller-runs policy
+            flush();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${device.last-login.max-staleness:30s}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Object[]> rows = new ArrayList<>(pending.size());
+        for (final Iterator<Long> it = pending.keySet().iterator(); it.hasNext(); ) {
+            final Long deviceId = it.next();
+            final Long loggedIn = pending.remove(deviceId);
+            if (loggedIn != null) {
+                final Timestamp timestamp = new Timestamp(loggedIn);
+                rows.add(new Object[]{timestamp, deviceId, timestamp});
+            }
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE, rows);
+            failing = false;
+            flushed.increment(rows.size());
+        } catch (final DataAccessException e) {
+            LOGGER.warn("Could not write the last login of {} devices, keeping them for the next flush", rows.size(), e);
+            failing = true;
+            flushFailures.increment();
+            for (final Object[] row : rows) {
+                pending.merge((Long) row[1], ((Timestamp) row[0]).getTime(), Math::max);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+}
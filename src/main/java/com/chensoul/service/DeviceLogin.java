@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * What device verification needs from a successful login, taken from the request while it is still being
+ * handled so the verification can run on another thread.
+ */
+public final class DeviceLogin {
+    private final Long userId;
+    private final String email;
+    private final String ip;
+    private final String location;
+    private final String userAgent;
+    private final Locale locale;
+    private final Date loggedIn;
+
+    public DeviceLogin(final Long userId, final String email, final String ip, final String location, final String userAgent, final Locale locale, final Date loggedIn) {
+        this.userId = userId;
+        this.email = email;
+        this.ip = ip;
+        this.location = location;
+        this.userAgent = userAgent;
+        this.locale = locale;
+        this.loggedIn = loggedIn;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getIp() {
+        return ip;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    public Date getLoggedIn() {
+        return loggedIn;
+    }
+}
@@ -18,27 +18,20 @@ package com.chensoul.service;
 import com.chensoul.persistence.dao.DeviceMetadataRepository;
 import com.chensoul.persistence.model.DeviceMetadata;
 import com.chensoul.persistence.model.User;
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.exception.GeoIp2Exception;
-import com.maxmind.geoip2.model.CityResponse;
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.location.LoginGeoContext;
 import jakarta.servlet.http.HttpServletRequest;
-import java.io.IOException;
-import java.net.InetAddress;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import static java.util.Objects.nonNull;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.context.NoSuchMessageException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
-import ua_parser.Client;
-import ua_parser.Parser;
 
 @Component
 public class DeviceService {
@@ -49,99 +42,72 @@ public class DeviceService {
     private String from;
 
     private DeviceMetadataRepository deviceMetadataRepository;
-    private DatabaseReader databaseReader;
-    private Parser parser;
+    private DeviceLastLoginBuffer deviceLastLoginBuffer;
+    private LoginGeoContext loginGeoContext;
+    private UserAgentService userAgentService;
     private JavaMailSender mailSender;
     private MessageSource messages;
+    private ClientIpResolver clientIpResolver;
 
     public DeviceService(DeviceMetadataRepository deviceMetadataRepository,
-                         @Qualifier("GeoIPCity") DatabaseReader databaseReader,
-                         Parser parser,
+                         DeviceLastLoginBuffer deviceLastLoginBuffer,
+                         LoginGeoContext loginGeoContext,
+                         UserAgentService userAgentService,
                          JavaMailSender mailSender,
-                         MessageSource messages) {
+                         MessageSource messages,
+                         ClientIpResolver clientIpResolver) {
         this.deviceMetadataRepository = deviceMetadataRepository;
-        this.databaseReader = databaseReader;
-        this.parser = parser;
+        this.deviceLastLoginBuffer = deviceLastLoginBuffer;
+        this.loginGeoContext = loginGeoContext;
+        this.userAgentService = userAgentService;
         this.mailSender = mailSender;
         this.messages = messages;
+        this.clientIpResolver = clientIpResolver;
     }
 
-    public void verifyDevice(User user, HttpServletRequest request) throws IOException, GeoIp2Exception {
-        String ip = extractIp(request);
-        String location = getIpLocation(ip);
+    public void verifyDevice(User user, HttpServletRequest request) {
+        verifyDevice(capture(user, request));
+    }
+
+    /**
+     * Takes what {@link #verifyDevice(DeviceLogin)} needs from the request of a successful login. The location comes
+     * from the per-login geo context, which looks the address up only if the location check has not done so already.
+     */
+    public DeviceLogin capture(User user, HttpServletRequest request) {
+        return new DeviceLogin(user.getId(), user.getEmail(), clientIpResolver.resolveIp(request), getLocation(request),
+                request.getHeader("user-agent"), request.getLocale(), new Date());
+    }
 
-        String deviceDetails = getDeviceDetails(request.getHeader("user-agent"));
-        DeviceMetadata existingDevice = findExistingDevice(user.getId(), deviceDetails, location);
+    public void verifyDevice(DeviceLogin login) {
+        String location = login.getLocation();
+        String deviceDetails = userAgentService.getDeviceDetails(login.getUserAgent());
+        String fingerprint = DeviceMetadata.fingerprint(deviceDetails, location);
+        DeviceMetadata existingDevice = deviceMetadataRepository.findByUserIdAndFingerprint(login.getUserId(), fingerprint);
 
         if (Objects.isNull(existingDevice)) {
-            unknownDeviceNotification(deviceDetails, location, ip, user.getEmail(), request.getLocale());
-
             DeviceMetadata deviceMetadata = new DeviceMetadata();
-            deviceMetadata.setUserId(user.getId());
+            deviceMetadata.setUserId(login.getUserId());
             deviceMetadata.setLocation(location);
             deviceMetadata.setDeviceDetails(deviceDetails);
-            deviceMetadata.setLastLoggedIn(new Date());
-            deviceMetadataRepository.save(deviceMetadata);
-        } else {
-            existingDevice.setLastLoggedIn(new Date());
-            deviceMetadataRepository.save(existingDevice);
-        }
-
-    }
-
-    private String extractIp(HttpServletRequest request) {
-        String clientIp;
-        String clientXForwardedForIp = request.getHeader("x-forwarded-for");
-        if (nonNull(clientXForwardedForIp)) {
-            clientIp = parseXForwardedHeader(clientXForwardedForIp);
-        } else {
-            clientIp = request.getRemoteAddr();
-        }
-
-        return clientIp;
-    }
-
-    private String parseXForwardedHeader(String header) {
-        return header.split(" *, *")[0];
-    }
-
-    private String getDeviceDetails(String userAgent) {
-        String deviceDetails = UNKNOWN;
-
-        Client client = parser.parse(userAgent);
-        if (Objects.nonNull(client)) {
-            deviceDetails = client.userAgent.family + " " + client.userAgent.major + "." + client.userAgent.minor +
-                    " - " + client.os.family + " " + client.os.major + "." + client.os.minor;
-        }
-
-        return deviceDetails;
-    }
-
-    private String getIpLocation(String ip) throws IOException, GeoIp2Exception {
-        String location = UNKNOWN;
-        InetAddress ipAddress = InetAddress.getByName(ip);
-
-        CityResponse cityResponse = databaseReader.city(ipAddress);
-        if (Objects.nonNull(cityResponse) &&
-                Objects.nonNull(cityResponse.getCity()) &&
-                !StringUtils.isEmpty(cityResponse.getCity().getName())) {
-
-            location = cityResponse.getCity().getName();
+            deviceMetadata.setLastLoggedIn(login.getLoggedIn());
+            try {
+                deviceMetadataRepository.saveAndFlush(deviceMetadata);
+                unknownDeviceNotification(deviceDetails, location, login.getIp(), login.getEmail(), login.getLocale());
+                return;
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent login from the same device inserted it first and has sent the notification
+                existingDevice = deviceMetadataRepository.findByUserIdAndFingerprint(login.getUserId(), fingerprint);
+                if (Objects.isNull(existingDevice)) {
+                    throw e;
+                }
+            }
         }
-
-        return location;
+        deviceLastLoginBuffer.touch(existingDevice.getId(), login.getLoggedIn());
     }
 
-    private DeviceMetadata findExistingDevice(Long userId, String deviceDetails, String location) {
-        List<DeviceMetadata> knownDevices = deviceMetadataRepository.findByUserId(userId);
-
-        for (DeviceMetadata existingDevice : knownDevices) {
-            if (existingDevice.getDeviceDetails().equals(deviceDetails) &&
-                    existingDevice.getLocation().equals(location)) {
-                return existingDevice;
-            }
-        }
-        return null;
+    private String getLocation(HttpServletRequest request) {
+        String location = loginGeoContext.locate(request).getCity();
+        return StringUtils.hasLength(location) ? location : UNKNOWN;
     }
 
     private void unknownDeviceNotification(String deviceDetails, String location, String ip, String email, Locale locale) {
@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs device verification, with its database work and notification mail, on a small pool of its own so login
+ * responses do not wait for SMTP.
+ * <p>
+ * The queue is bounded. When it is full, {@code caller-runs}, the default, makes the login request do the work
+ * itself, slowing logins down instead of losing notifications. {@code drop-oldest} discards the longest-waiting
+ * verification instead; a known device is then simply checked again on its next login, but a new-device
+ * notification is lost, so anyone able to fill the queue with logins can suppress another user's.
+ */
+@Component
+public class DeviceVerificationQueue {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    public static final String DROP_OLDEST = "drop-oldest";
+    public static final String CALLER_RUNS = "caller-runs";
+
+    private final DeviceService deviceService;
+    private final ThreadPoolExecutor executor;
+    private final Duration shutdownTimeout;
+
+    private final Timer processingTimer;
+    private final Timer delayTimer;
+    private final Counter dropped;
+    private final Counter failed;
+
+    public DeviceVerificationQueue(final DeviceService deviceService,
+                                   @Value("${login-notification.threads:2}") final int threads,
+                                   @Value("${login-notification.queue-capacity:1000}") final int queueCapacity,
+                                   @Value("${login-notification.rejection-policy:" + CALLER_RUNS + "}") final String rejectionPolicy,
+                                   @Value("${login-notification.shutdown-timeout:10s}") final Duration shutdownTimeout,
+                                   final MeterRegistry meterRegistry) {
+        this.deviceService = deviceService;
+        this.shutdownTimeout = shutdownTimeout;
+
+        final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue,
+                new CustomizableThreadFactory("login-notification-"), rejectionHandler(rejectionPolicy));
+
+        Gauge.builder("login.notification.queue", queue, BlockingQueue::size)
+                .description("Device verifications waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("login.notification.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Device verifications in progress")
+                .register(meterRegistry);
+        this.delayTimer = Timer.builder("login.notification.delay")
+                .description("Time from login to the start of its device verification")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("login.notification.processing")
+                .description("Time spent verifying a device, including the notification mail")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.dropped = Counter.builder("login.notification.dropped")
+                .description("Device verifications discarded because the queue was full or the application was stopping")
+                .register(meterRegistry);
+        this.failed = Counter.builder("login.notification.failed")
+                .description("Device verifications that threw")
+                .register(meterRegistry);
+    }
+
+    public void submit(final DeviceLogin login) {
+        final long submitted = System.nanoTime();
+        executor.execute(() -> {
+            final long started = System.nanoTime();
+            delayTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+            try {
+                deviceService.verifyDevice(login);
+            } catch (final RuntimeException e) {
+                failed.increment();
+                LOGGER.error("An error occurred while verifying device of user {}", login.getUserId(), e);
+            } finally {
+                processingTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * Lets queued verifications finish, up to the shutdown timeout.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            final int notRun = executor.shutdownNow().size();
+            dropped.increment(notRun);
+            LOGGER.warn("{} device verifications were not run before shutdown", notRun);
+        }
+    }
+
+    /**
+     * Verifications submitted once shutdown has begun are discarded and counted as dropped under either policy.
+     */
+    private RejectedExecutionHandler rejectionHandler(final String policy) {
+        if (CALLER_RUNS.equals(policy)) {
+            return (task, pool) -> {
+                if (pool.isShutdown()) {
+                    dropped.increment();
+                } else {
+                    task.run();
+                }
+            };
+        }
+        if (DROP_OLDEST.equals(policy)) {
+            return (task, pool) -> {
+                if (pool.isShutdown()) {
+                    dropped.increment();
+                    return;
+                }
+                if (pool.getQueue().poll() != null) {
+                    dropped.increment();
+                }
+                pool.execute(task);
+            };
+        }
+        throw new IllegalArgumentException("login-notification.rejection-policy must be " + DROP_OLDEST + " or " + CALLER_RUNS + ", not " + policy);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import com.chensoul.security.attempt.IpAddresses;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.maxmind.geoip2.DatabaseProvider;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Locations of client addresses, with the MaxMind lookups cached.
+ * <p>
+ * One City lookup yields country, city and coordinates together. The Country database is only opened, lazily,
+ * while no City database is available, and then answers with the country alone.
+ * <p>
+ * Results are kept per IPv4 address and per IPv6 /64, the smallest network GeoLite assigns a location to, so
+ * clients rotating through their privacy addresses share one entry. Addresses the databases do not know are
+ * cached as well; failed lookups are not.
+ */
+@Service
+public class GeoIpService {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private static final long IPV4_TAG = 0xffff_ffffL << 32;
+
+    private final DatabaseProvider countryReader;
+    private final DatabaseProvider cityReader;
+    private final Cache<Long, GeoLocation> locations;
+    private volatile boolean countryReaderUsed;
+
+    public GeoIpService(@Qualifier("GeoIPCountry") @Lazy final DatabaseProvider countryReader,
+                        @Qualifier("GeoIPCity") final DatabaseProvider cityReader,
+                        @Value("${geoip.cache.maximum-size:100000}") final long maximumSize,
+                        @Value("${geoip.cache.expire-after-write:24h}") final Duration expireAfterWrite,
+                        final MeterRegistry meterRegistry) {
+        this.countryReader = countryReader;
+        this.cityReader = cityReader;
+        this.locations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, locations, "geoip.location");
+    }
+
+    /**
+     * @return the location, {@link GeoLocation#UNKNOWN} if the address is not a literal or not in the database,
+     * or {@code null} if the lookup failed
+     */
+    public GeoLocation locate(final String ip) {
+        return locate(IpAddresses.parse(ip));
+    }
+
+    public GeoLocation locate(final byte[] address) {
+        if (address == null) {
+            return GeoLocation.UNKNOWN;
+        }
+        final long key = key(address);
+        GeoLocation location = locations.getIfPresent(key);
+        if (location == null) {
+            try {
+                location = load(InetAddress.getByAddress(address));
+            } catch (final IOException | GeoIp2Exception | RuntimeException e) {
+                LOGGER.warn("GeoIP lookup failed", e);
+                return null;
+            }
+            locations.put(key, location);
+        }
+        return location;
+    }
+
+    /**
+     * Picks up database files replaced on disk, e.g. by geoipupdate, and drops the locations cached from the old
+     * ones. The Country database is only checked once it has been opened.
+     */
+    @Scheduled(initialDelayString = "${geoip.reload-interval:1m}", fixedDelayString = "${geoip.reload-interval:1m}")
+    public void reloadDatabases() {
+        boolean reloaded = reload(cityReader);
+        if (countryReaderUsed) {
+            reloaded |= reload(countryReader);
+        }
+        if (reloaded) {
+            locations.invalidateAll();
+        }
+    }
+
+    private GeoLocation load(final InetAddress address) throws IOException, GeoIp2Exception {
+        if (!(cityReader instanceof ReloadableDatabaseReader) || ((ReloadableDatabaseReader) cityReader).isAvailable()) {
+            return cityReader.tryCity(address).map(GeoLocation::of).orElse(GeoLocation.UNKNOWN);
+        }
+        countryReaderUsed = true;
+        return countryReader.tryCountry(address).map(GeoLocation::of).orElse(GeoLocation.UNKNOWN);
+    }
+
+    private static boolean reload(final DatabaseProvider reader) {
+        return reader instanceof ReloadableDatabaseReader && ((ReloadableDatabaseReader) reader).reloadIfChanged();
+    }
+
+    private static long key(final byte[] address) {
+        if (address.length == IpAddresses.IPV4_LENGTH) {
+            return IPV4_TAG | (address[0] & 0xffL) << 24 | (address[1] & 0xffL) << 16 | (address[2] & 0xffL) << 8 | address[3] & 0xffL;
+        }
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = prefix << 8 | address[i] & 0xffL;
+        }
+        return prefix;
+    }
+}
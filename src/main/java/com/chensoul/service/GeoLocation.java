@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import com.maxmind.geoip2.model.CityResponse;
+import com.maxmind.geoip2.model.CountryResponse;
+import com.maxmind.geoip2.record.City;
+import com.maxmind.geoip2.record.Country;
+import com.maxmind.geoip2.record.Location;
+
+/**
+ * Where an address is, as far as the GeoIP databases know. Every part may be {@code null}.
+ */
+public final class GeoLocation {
+    public static final GeoLocation UNKNOWN = new GeoLocation(null, null, null, null, null);
+
+    private final String countryCode;
+    private final String country;
+    private final String city;
+    private final Double latitude;
+    private final Double longitude;
+
+    public GeoLocation(final String countryCode, final String country, final String city, final Double latitude, final Double longitude) {
+        this.countryCode = countryCode;
+        this.country = country;
+        this.city = city;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    static GeoLocation of(final CityResponse response) {
+        final Country country = response.getCountry();
+        final City city = response.getCity();
+        final Location location = response.getLocation();
+        return new GeoLocation(country == null ? null : country.getIsoCode(),
+                country == null ? null : country.getName(),
+                city == null ? null : city.getName(),
+                location == null ? null : location.getLatitude(),
+                location == null ? null : location.getLongitude());
+    }
+
+    static GeoLocation of(final CountryResponse response) {
+        final Country country = response.getCountry();
+        return country == null ? UNKNOWN : new GeoLocation(country.getIsoCode(), country.getName(), null, null, null);
+    }
+
+    /**
+     * @return the ISO 3166-1 alpha-2 code, e.g. {@code DE}
+     */
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * @return the English country name
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * @return the English city name
+     */
+    public String getCity() {
+        return city;
+    }
+
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    public boolean isKnown() {
+        return country != null || city != null;
+    }
+
+    @Override
+    public String toString() {
+        return city == null ? String.valueOf(country) : city + ", " + country;
+    }
+}
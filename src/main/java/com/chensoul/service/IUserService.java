@@ -62,7 +62,7 @@ public interface IUserService {
 
     List<String> getUsersFromSessionRegistry();
 
-    NewLocationToken isNewLoginLocation(String username, String ip);
+    NewLocationToken isNewLoginLocation(String username, GeoLocation location);
 
     String isValidNewLocationToken(String token);
 
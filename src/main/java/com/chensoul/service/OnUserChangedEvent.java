@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import com.chensoul.persistence.model.User;
+import org.springframework.context.ApplicationEvent;
+
+@SuppressWarnings("serial")
+public class OnUserChangedEvent extends ApplicationEvent {
+    private final User user;
+
+    public OnUserChangedEvent(final User user) {
+        super(user);
+        this.user = user;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.Reader;
+import com.maxmind.geoip2.DatabaseProvider;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+import com.maxmind.geoip2.model.AnonymousIpResponse;
+import com.maxmind.geoip2.model.AsnResponse;
+import com.maxmind.geoip2.model.CityResponse;
+import com.maxmind.geoip2.model.ConnectionTypeResponse;
+import com.maxmind.geoip2.model.CountryResponse;
+import com.maxmind.geoip2.model.DomainResponse;
+import com.maxmind.geoip2.model.EnterpriseResponse;
+import com.maxmind.geoip2.model.IpRiskResponse;
+import com.maxmind.geoip2.model.IspResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+/**
+ * A MaxMind database that is replaced in place when its file changes.
+ * <p>
+ * The database is memory-mapped from {@code path} when that file exists, so the JVMs on a host share one copy in
+ * the page cache. Otherwise it is read from the classpath {@code fallback} into the heap. If neither exists, the
+ * database is absent: {@code try*} lookups find nothing and the others throw.
+ * <p>
+ * {@link #reloadIfChanged()} opens the new file next to the old one and swaps the two atomically. Every lookup
+ * holds a reference on the reader it started with, and a replaced reader is closed only once its last lookup
+ * has finished. Each reader gets its own node cache, because cached nodes are only valid for the file they
+ * came from.
+ */
+public class ReloadableDatabaseReader implements DatabaseProvider, Closeable {
+    private final Logger LOGGER = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final Path path;
+    private final Resource fallback;
+    private final int nodeCacheCapacity;
+    private final AtomicReference<Handle> current = new AtomicReference<>();
+
+    private Object loadedVersion;
+
+    public ReloadableDatabaseReader(final String name, final Path path, final Resource fallback, final int nodeCacheCapacity) throws IOException {
+        this.name = name;
+        this.path = path;
+        this.fallback = fallback;
+        this.nodeCacheCapacity = nodeCacheCapacity;
+        final Object version = fileVersion();
+        if (version != null) {
+            swap(openFile(), version);
+        } else if (fallback != null && fallback.exists()) {
+            try (InputStream in = fallback.getInputStream()) {
+                swap(new DatabaseReader.Builder(in).withCache(new CHMCache(nodeCacheCapacity)).build(), null);
+            }
+            LOGGER.info("GeoIP database {} loaded from {}", name, fallback);
+        } else {
+            LOGGER.warn("GeoIP database {} not found at {} or {}; lookups will find nothing", name, path, fallback);
+        }
+    }
+
+    public boolean isAvailable() {
+        return current.get() != null;
+    }
+
+    /**
+     * Swaps in the file at {@code path} if it appeared or changed since the last load. A file that cannot be
+     * opened, for instance one still being written, leaves the current database in place.
+     *
+     * @return whether a new database was swapped in
+     */
+    public synchronized boolean reloadIfChanged() {
+        final Object version = fileVersion();
+        if (version == null || version.equals(loadedVersion)) {
+            return false;
+        }
+        try {
+            swap(openFile(), version);
+            return true;
+        } catch (final IOException | RuntimeException e) {
+            LOGGER.warn("Could not load GeoIP database {} from {}, keeping the current one", name, path, e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        final Handle old = current.getAndSet(null);
+        if (old != null) {
+            old.release();
+        }
+    }
+
+    @Override
+    public CountryResponse country(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.country(ipAddress));
+    }
+
+    @Override
+    public Optional<CountryResponse> tryCountry(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryCountry(ipAddress));
+    }
+
+    @Override
+    public CityResponse city(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.city(ipAddress));
+    }
+
+    @Override
+    public Optional<CityResponse> tryCity(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryCity(ipAddress));
+    }
+
+    @Override
+    public AnonymousIpResponse anonymousIp(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.anonymousIp(ipAddress));
+    }
+
+    @Override
+    public Optional<AnonymousIpResponse> tryAnonymousIp(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryAnonymousIp(ipAddress));
+    }
+
+    @Override
+    public IpRiskResponse ipRisk(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.ipRisk(ipAddress));
+    }
+
+    @Override
+    public Optional<IpRiskResponse> tryIpRisk(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryIpRisk(ipAddress));
+    }
+
+    @Override
+    public AsnResponse asn(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.asn(ipAddress));
+    }
+
+    @Override
+    public Optional<AsnResponse> tryAsn(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryAsn(ipAddress));
+    }
+
+    @Override
+    public ConnectionTypeResponse connectionType(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.connectionType(ipAddress));
+    }
+
+    @Override
+    public Optional<ConnectionTypeResponse> tryConnectionType(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryConnectionType(ipAddress));
+    }
+
+    @Override
+    public DomainResponse domain(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.domain(ipAddress));
+    }
+
+    @Override
+    public Optional<DomainResponse> tryDomain(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryDomain(ipAddress));
+    }
+
+    @Override
+    public EnterpriseResponse enterprise(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.enterprise(ipAddress));
+    }
+
+    @Override
+    public Optional<EnterpriseResponse> tryEnterprise(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryEnterprise(ipAddress));
+    }
+
+    @Override
+    public IspResponse isp(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return read(reader -> reader.isp(ipAddress));
+    }
+
+    @Override
+    public Optional<IspResponse> tryIsp(final InetAddress ipAddress) throws IOException, GeoIp2Exception {
+        return tryRead(reader -> reader.tryIsp(ipAddress));
+    }
+
+    // UTIL
+
+    private <T> T read(final Query<T> query) throws IOException, GeoIp2Exception {
+        final Handle handle = acquire();
+        if (handle == null) {
+            throw new GeoIp2Exception("GeoIP database " + name + " is not available");
+        }
+        try {
+            return query.apply(handle.reader);
+        } finally {
+            handle.release();
+        }
+    }
+
+    private <T> Optional<T> tryRead(final Query<Optional<T>> query) throws IOException, GeoIp2Exception {
+        final Handle handle = acquire();
+        if (handle == null) {
+            return Optional.empty();
+        }
+        try {
+            return query.apply(handle.reader);
+        } finally {
+            handle.release();
+        }
+    }
+
+    private Handle acquire() {
+        while (true) {
+            final Handle handle = current.get();
+            if (handle == null || handle.retain()) {
+                return handle;
+            }
+            // lost a race with a swap that released the last reference; the new handle is already published
+        }
+    }
+
+    private void swap(final DatabaseReader reader, final Object version) {
+        final Handle old = current.getAndSet(new Handle(reader));
+        loadedVersion = version;
+        if (old != null) {
+            old.release();
+            LOGGER.info("GeoIP database {} reloaded from {}", name, path);
+        } else if (version != null) {
+            LOGGER.info("GeoIP database {} memory-mapped from {}", name, path);
+        }
+    }
+
+    private DatabaseReader openFile() throws IOException {
+        return new DatabaseReader.Builder(path.toFile())
+                .fileMode(Reader.FileMode.MEMORY_MAPPED)
+                .withCache(new CHMCache(nodeCacheCapacity))
+                .build();
+    }
+
+    /**
+     * @return modification time and size of the file, or {@code null} if there is none
+     */
+    private Object fileVersion() {
+        if (path == null) {
+            return null;
+        }
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes.lastModifiedTime().toMillis() + ":" + attributes.size() : null;
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Query<T> {
+        T apply(DatabaseReader reader) throws IOException, GeoIp2Exception;
+    }
+
+    /**
+     * A reader with a reference count: one for being current, one per running lookup.
+     */
+    private final class Handle {
+        private final DatabaseReader reader;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Handle(final DatabaseReader reader) {
+            this.reader = reader;
+        }
+
+        private boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    LOGGER.warn("Could not close replaced GeoIP database {}", name, e);
+                }
+            }
+        }
+    }
+}
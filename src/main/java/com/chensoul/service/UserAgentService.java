@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.Objects;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ua_parser.Client;
+import ua_parser.Parser;
+
+/**
+ * Describes the device behind a User-Agent header, e.g. {@code Chrome 71.0 - Mac OS X 10.14}.
+ * <p>
+ * Users send few distinct User-Agent strings, so descriptions are cached by the raw header. Only the first
+ * {@code maxLength} characters of a header are parsed and used as the key, so an oversized value costs no more
+ * than a real one; browsers put the tokens the parser looks for well before that. The parser compiles its regexes
+ * on first use rather than at startup.
+ */
+@Service
+public class UserAgentService {
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private final ObjectFactory<Parser> parser;
+    private final int maxLength;
+    private final Cache<String, String> deviceDetails;
+
+    public UserAgentService(final ObjectFactory<Parser> parser,
+                            @Value("${user-agent.cache.maximum-size:10000}") final long maximumSize,
+                            @Value("${user-agent.cache.max-length:512}") final int maxLength,
+                            final MeterRegistry meterRegistry) {
+        this.parser = parser;
+        this.maxLength = maxLength;
+        this.deviceDetails = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, deviceDetails, "userAgent");
+    }
+
+    public String getDeviceDetails(final String userAgent) {
+        if (userAgent == null) {
+            return parse(null);
+        }
+        final String key = userAgent.length() > maxLength ? userAgent.substring(0, maxLength) : userAgent;
+        return deviceDetails.get(key, this::parse);
+    }
+
+    private String parse(final String userAgent) {
+        final Client client = parser.getObject().parse(userAgent);
+        if (Objects.isNull(client)) {
+            return UNKNOWN;
+        }
+        return client.userAgent.family + " " + client.userAgent.major + "." + client.userAgent.minor +
+                " - " + client.os.family + " " + client.os.major + "." + client.os.minor;
+    }
+}
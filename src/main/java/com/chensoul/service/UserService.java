@@ -26,12 +26,12 @@ import com.chensoul.persistence.model.PasswordResetToken;
 import com.chensoul.persistence.model.User;
 import com.chensoul.persistence.model.UserLocation;
 import com.chensoul.persistence.model.VerificationToken;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.location.KnownLocationCache;
 import com.chensoul.web.dto.UserDto;
 import com.chensoul.web.error.UserAlreadyExistException;
-import com.maxmind.geoip2.DatabaseReader;
 import jakarta.transaction.Transactional;
 import java.io.UnsupportedEncodingException;
-import java.net.InetAddress;
 import java.net.URLEncoder;
 import java.util.Calendar;
 import java.util.Collections;
@@ -40,6 +40,7 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -64,7 +65,7 @@ public class UserService implements IUserService {
 
     private final SessionRegistry sessionRegistry;
 
-    private final DatabaseReader databaseReader;
+    private final GeoIpService geoIpService;
 
     private final UserLocationRepository userLocationRepository;
 
@@ -72,6 +73,12 @@ public class UserService implements IUserService {
 
     private final Environment env;
 
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final LoginUserContext loginUserContext;
+
+    private final KnownLocationCache knownLocationCache;
+
     public static final String TOKEN_INVALID = "invalidToken";
     public static final String TOKEN_EXPIRED = "expired";
     public static final String TOKEN_VALID = "valid";
@@ -112,6 +119,7 @@ public class UserService implements IUserService {
     @Override
     public void saveRegisteredUser(final User user) {
         userRepository.save(user);
+        eventPublisher.publishEvent(new OnUserChangedEvent(user));
     }
 
     @Override
@@ -129,6 +137,7 @@ public class UserService implements IUserService {
         }
 
         userRepository.delete(user);
+        eventPublisher.publishEvent(new OnUserChangedEvent(user));
     }
 
     @Override
@@ -176,6 +185,7 @@ public class UserService implements IUserService {
     public void changeUserPassword(final User user, final String password) {
         user.setPassword(passwordEncoder.encode(password));
         userRepository.save(user);
+        eventPublisher.publishEvent(new OnUserChangedEvent(user));
     }
 
     @Override
@@ -202,6 +212,7 @@ public class UserService implements IUserService {
         user.setEnabled(true);
         // tokenRepository.delete(verificationToken);
         userRepository.save(user);
+        eventPublisher.publishEvent(new OnUserChangedEvent(user));
         return TOKEN_VALID;
     }
 
@@ -217,6 +228,7 @@ public class UserService implements IUserService {
         User currentUser = (User) curAuth.getPrincipal();
         currentUser.setUsing2FA(use2FA);
         currentUser = userRepository.save(currentUser);
+        eventPublisher.publishEvent(new OnUserChangedEvent(currentUser));
         final Authentication auth = new UsernamePasswordAuthenticationToken(currentUser, currentUser.getPassword(), curAuth.getAuthorities());
         SecurityContextHolder.getContext()
             .setAuthentication(auth);
@@ -244,27 +256,30 @@ public class UserService implements IUserService {
     }
 
     @Override
-    public NewLocationToken isNewLoginLocation(String username, String ip) {
+    public NewLocationToken isNewLoginLocation(String username, GeoLocation location) {
 
         if(!isGeoIpLibEnabled()) {
             return null;
         }
 
         try {
-            final InetAddress ipAddress = InetAddress.getByName(ip);
-            final String country = databaseReader.country(ipAddress)
-                .getCountry()
-                .getName();
-            System.out.println(country + "====****");
-            final User user = userRepository.findByEmail(username);
-            final UserLocation loc = userLocationRepository.findByCountryAndUser(country, user);
-            if ((loc == null) || !loc.isEnabled()) {
-                return createNewLocationToken(country, user);
+            final String countryCode = location.getCountryCode();
+            if (countryCode == null) {
+                return null;
+            }
+            final User user = loginUserContext.loadUser(username);
+            if (knownLocationCache.isKnown(user.getId(), countryCode)) {
+                return null;
             }
+            // not in the cached set; it may have been confirmed since it was loaded
+            if (userLocationRepository.findFirstByCountryCodeAndUserAndEnabledTrue(countryCode, user) != null) {
+                knownLocationCache.add(user.getId(), countryCode);
+                return null;
+            }
+            return createNewLocationToken(location, user);
         } catch (final Exception e) {
             return null;
         }
-        return null;
     }
 
     @Override
@@ -277,6 +292,7 @@ public class UserService implements IUserService {
         userLoc.setEnabled(true);
         userLoc = userLocationRepository.save(userLoc);
         newLocationTokenRepository.delete(locToken);
+        knownLocationCache.add(userLoc.getUser().getId(), userLoc.getCountryCode());
         return userLoc.getCountry();
     }
 
@@ -288,13 +304,14 @@ public class UserService implements IUserService {
         }
 
         try {
-            final InetAddress ipAddress = InetAddress.getByName(ip);
-            final String country = databaseReader.country(ipAddress)
-                .getCountry()
-                .getName();
-            UserLocation loc = new UserLocation(country, user);
+            final GeoLocation location = geoIpService.locate(ip);
+            if (location == null || location.getCountryCode() == null) {
+                return;
+            }
+            UserLocation loc = new UserLocation(location.getCountryCode(), location.getCountry(), user);
             loc.setEnabled(true);
             userLocationRepository.save(loc);
+            knownLocationCache.add(user.getId(), location.getCountryCode());
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -304,8 +321,8 @@ public class UserService implements IUserService {
         return Boolean.parseBoolean(env.getProperty("geo.ip.lib.enabled"));
     }
 
-    private NewLocationToken createNewLocationToken(String country, User user) {
-        UserLocation loc = new UserLocation(country, user);
+    private NewLocationToken createNewLocationToken(GeoLocation location, User user) {
+        UserLocation loc = new UserLocation(location.getCountryCode(), location.getCountry(), user);
         loc = userLocationRepository.save(loc);
 
         final NewLocationToken token = new NewLocationToken(UUID.randomUUID()
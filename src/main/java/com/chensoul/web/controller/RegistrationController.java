@@ -15,24 +15,18 @@
  */
 package com.chensoul.web.controller;
 
-import com.chensoul.persistence.model.Privilege;
-import com.chensoul.persistence.model.Role;
 import com.chensoul.persistence.model.User;
 import com.chensoul.security.ISecurityUserService;
+import com.chensoul.security.RoleAuthorityRegistry;
 import com.chensoul.service.IUserService;
 import jakarta.servlet.http.HttpServletRequest;
 import java.io.UnsupportedEncodingException;
-import java.util.Collection;
-import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.MessageSource;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -49,6 +43,7 @@ public class RegistrationController {
     private final IUserService userService;
     private final ISecurityUserService securityUserService;
     private final MessageSource messages;
+    private final RoleAuthorityRegistry roleAuthorityRegistry;
 
     @GetMapping("/registrationConfirm")
     public ModelAndView confirmRegistration(final HttpServletRequest request, final ModelMap model, @RequestParam("token") final String token) throws UnsupportedEncodingException {
@@ -157,19 +152,7 @@ public class RegistrationController {
     // ============== NON-API ============
 
     public void authWithoutPassword(User user) {
-
-        List<Privilege> privileges = user.getRoles()
-                .stream()
-                .map(Role::getPrivileges)
-                .flatMap(Collection::stream)
-                .distinct()
-                .collect(Collectors.toList());
-
-        List<GrantedAuthority> authorities = privileges.stream()
-                .map(p -> new SimpleGrantedAuthority(p.getName()))
-                .collect(Collectors.toList());
-
-        Authentication authentication = new UsernamePasswordAuthenticationToken(user, null, authorities);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(user, null, roleAuthorityRegistry.getAuthorities(user.getRoles()));
         SecurityContextHolder.getContext().setAuthentication(authentication);
     }
 
@@ -177,12 +160,4 @@ public class RegistrationController {
         return "http://" + request.getServerName() + ":" + request.getServerPort() + request.getContextPath();
     }
 
-    private final String getClientIP(HttpServletRequest request) {
-        final String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader==null || xfHeader.isEmpty() || !xfHeader.contains(request.getRemoteAddr())) {
-            return request.getRemoteAddr();
-        }
-        return xfHeader.split(",")[0];
-    }
-
 }
@@ -18,11 +18,13 @@ package com.chensoul.web.controller;
 import com.chensoul.persistence.model.User;
 import com.chensoul.persistence.model.VerificationToken;
 import com.chensoul.registration.OnRegistrationCompleteEvent;
+import com.chensoul.security.ClientIpResolver;
 import com.chensoul.security.ISecurityUserService;
 import com.chensoul.service.IUserService;
 import com.chensoul.web.dto.PasswordDto;
 import com.chensoul.web.dto.UserDto;
 import com.chensoul.web.error.InvalidOldPasswordException;
+import com.chensoul.web.ratelimit.RateLimited;
 import com.chensoul.web.util.GenericResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
@@ -55,20 +57,23 @@ public class RegistrationRestController {
     private final JavaMailSender mailSender;
     private final ApplicationEventPublisher eventPublisher;
     private final Environment env;
+    private final ClientIpResolver clientIpResolver;
 
     // Registration
     @PostMapping("/user/registration")
+    @RateLimited(value = "registration", capacity = 10, period = "1h", parameter = "email", parameterCapacity = 3)
     public GenericResponse registerUserAccount(@Valid final UserDto accountDto, final HttpServletRequest request) {
         LOGGER.debug("Registering user account with information: {}", accountDto);
 
         final User registered = userService.registerNewUser(accountDto);
-        userService.addUserLocation(registered, getClientIP(request));
+        userService.addUserLocation(registered, clientIpResolver.resolveIp(request));
         eventPublisher.publishEvent(new OnRegistrationCompleteEvent(registered, request.getLocale(), getAppUrl(request)));
         return new GenericResponse("success");
     }
 
     // User activation - verification
     @GetMapping("/user/resendRegistrationToken")
+    @RateLimited(value = "resend-registration-token", capacity = 10, period = "1h", parameter = "token", parameterCapacity = 3)
     public GenericResponse resendRegistrationToken(final HttpServletRequest request, @RequestParam("token") final String existingToken) {
         final VerificationToken newToken = userService.generateNewVerificationToken(existingToken);
         final User user = userService.getUser(newToken.getToken());
@@ -78,6 +83,7 @@ public class RegistrationRestController {
 
     // Reset password
     @PostMapping("/user/resetPassword")
+    @RateLimited(value = "reset-password", capacity = 10, period = "1h", parameter = "email", parameterCapacity = 3)
     public GenericResponse resetPassword(final HttpServletRequest request, @RequestParam("email") final String userEmail) {
         final User user = userService.findUserByEmail(userEmail);
         if (user != null) {
@@ -154,12 +160,4 @@ public class RegistrationRestController {
     private String getAppUrl(HttpServletRequest request) {
         return "http://" + request.getServerName() + ":" + request.getServerPort() + request.getContextPath();
     }
-
-    private String getClientIP(HttpServletRequest request) {
-        final String xfHeader = request.getHeader("X-Forwarded-For");
-        if (xfHeader == null || xfHeader.isEmpty() || !xfHeader.contains(request.getRemoteAddr())) {
-            return request.getRemoteAddr();
-        }
-        return xfHeader.split(",")[0];
-    }
 }
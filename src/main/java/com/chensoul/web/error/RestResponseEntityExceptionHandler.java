@@ -80,6 +80,16 @@ public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionH
         return handleExceptionInternal(ex, bodyOfResponse, new HttpHeaders(), HttpStatus.CONFLICT, request);
     }
 
+    // 429
+    @ExceptionHandler({TooManyRequestsException.class})
+    public ResponseEntity<Object> handleTooManyRequests(final TooManyRequestsException ex, final WebRequest request) {
+        logger.warn("429 Status Code: " + ex.getMessage());
+        final GenericResponse bodyOfResponse = new GenericResponse(messages.getMessage("message.tooManyRequests", null, request.getLocale()), "TooManyRequests");
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return handleExceptionInternal(ex, bodyOfResponse, headers, HttpStatus.TOO_MANY_REQUESTS, request);
+    }
+
     // 500
     @ExceptionHandler({MailAuthenticationException.class})
     public ResponseEntity<Object> handleMail(final RuntimeException ex, final WebRequest request) {
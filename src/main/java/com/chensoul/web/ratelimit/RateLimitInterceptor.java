@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.web.ratelimit;
+
+import com.chensoul.security.ClientAddress;
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.attempt.SlidingWindowCounter;
+import com.chensoul.web.error.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Enforces {@link RateLimited} on handler methods. The buckets for a method are created on its first request.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final ClientIpResolver clientIpResolver;
+    private final Environment env;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxKeys;
+    private final ConcurrentHashMap<Method, Limits> limits = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(final ClientIpResolver clientIpResolver,
+                                final Environment env,
+                                final MeterRegistry meterRegistry,
+                                @Value("${security.rate-limit.enabled:true}") final boolean enabled,
+                                @Value("${security.rate-limit.max-keys:100000}") final int maxKeys) {
+        this.clientIpResolver = clientIpResolver;
+        this.env = env;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxKeys = maxKeys;
+    }
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response, final Object handler) {
+        if (!enabled || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        final HandlerMethod handlerMethod = (HandlerMethod) handler;
+        final RateLimited rateLimited = handlerMethod.getMethodAnnotation(RateLimited.class);
+        if (rateLimited == null) {
+            return true;
+        }
+        final Limits limit = limits.computeIfAbsent(handlerMethod.getMethod(), m -> createLimits(rateLimited));
+
+        final ClientAddress client = clientIpResolver.resolve(request);
+        long wait = limit.byIp.tryAcquire(client.isResolved()
+                ? SlidingWindowCounter.hash(client.getAddress(), client.getAddress().length * 8)
+                : SlidingWindowCounter.hash(client.getIp()));
+        if (wait == 0 && limit.byParameter != null) {
+            final String value = request.getParameter(limit.parameter);
+            if (StringUtils.hasText(value)) {
+                wait = limit.byParameter.tryAcquire(SlidingWindowCounter.hash(value.trim().toLowerCase(Locale.ROOT)));
+            }
+        }
+        if (wait > 0) {
+            limit.rejected.increment();
+            throw new TooManyRequestsException("Rate limit " + limit.name + " exceeded", Duration.ofNanos(wait));
+        }
+        return true;
+    }
+
+    private Limits createLimits(final RateLimited rateLimited) {
+        final String prefix = "security.rate-limit." + rateLimited.value() + ".";
+        final Duration period = DurationStyle.detectAndParse(env.getProperty(prefix + "period", rateLimited.period()));
+        final int capacity = env.getProperty(prefix + "capacity", Integer.class, rateLimited.capacity());
+        final int parameterCapacity = env.getProperty(prefix + "parameter-capacity", Integer.class, rateLimited.parameterCapacity());
+
+        TokenBucketLimiter byParameter = null;
+        if (!rateLimited.parameter().isEmpty() && parameterCapacity > 0) {
+            byParameter = new TokenBucketLimiter(parameterCapacity, period, maxKeys);
+        }
+        final Counter rejected = Counter.builder("security.rate-limit.rejected")
+                .description("Requests refused by a rate limit")
+                .tag("limit", rateLimited.value())
+                .register(meterRegistry);
+        return new Limits(rateLimited.value(), new TokenBucketLimiter(capacity, period, maxKeys), rateLimited.parameter(), byParameter, rejected);
+    }
+
+    private static final class Limits {
+        private final String name;
+        private final TokenBucketLimiter byIp;
+        private final String parameter;
+        private final TokenBucketLimiter byParameter;
+        private final Counter rejected;
+
+        private Limits(final String name, final TokenBucketLimiter byIp, final String parameter, final TokenBucketLimiter byParameter, final Counter rejected) {
+            this.name = name;
+            this.byIp = byIp;
+            this.parameter = parameter;
+            this.byParameter = byParameter;
+            this.rejected = rejected;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.web.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Throttles a handler method with token buckets per client IP and, optionally, per value of a request parameter
+ * such as the target email. Requests over the limit are answered with 429 and a Retry-After header.
+ * <p>
+ * The limits given here are defaults; {@code security.rate-limit.<name>.capacity}, {@code .period} and
+ * {@code .parameter-capacity} override them.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    /**
+     * Name of the limit, used for configuration and metrics.
+     */
+    String value();
+
+    /**
+     * Requests per client IP within {@link #period()}.
+     */
+    int capacity();
+
+    /**
+     * Time for an empty bucket to refill completely, e.g. {@code 1h}.
+     */
+    String period();
+
+    /**
+     * Request parameter to limit on as well; empty for IP only.
+     */
+    String parameter() default "";
+
+    /**
+     * Requests per parameter value within {@link #period()}.
+     */
+    int parameterCapacity() default 0;
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.web.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per 64-bit key, held as a single timestamp each (the generic cell rate algorithm): a bucket is
+ * the time at which it would be full again, and taking a token pushes that time one refill interval forward.
+ * A request is refused while that time is more than a full bucket ahead of now. Taking a token is one CAS.
+ * <p>
+ * At most {@code maxKeys} buckets are kept. Idle buckets expire once they would have refilled anyway, so
+ * dropping them loses nothing; under pressure the least recently used go first.
+ */
+public class TokenBucketLimiter {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final LongSupplier nanoClock;
+    private final Cache<Long, AtomicLong> buckets;
+
+    public TokenBucketLimiter(final int capacity, final Duration period, final int maxKeys) {
+        this(capacity, period, maxKeys, System::nanoTime);
+    }
+
+    public TokenBucketLimiter(final int capacity, final Duration period, final int maxKeys, final LongSupplier nanoClock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.intervalNanos = Math.max(1, period.toNanos() / capacity);
+        this.toleranceNanos = intervalNanos * (capacity - 1);
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(period)
+                .build();
+    }
+
+    /**
+     * Takes one token for the key if there is one.
+     *
+     * @return 0 if the request may proceed, otherwise the nanoseconds until the next token
+     */
+    public long tryAcquire(final long key) {
+        final long now = nanoClock.getAsLong();
+        final AtomicLong bucket = buckets.get(key, k -> new AtomicLong(now));
+        while (true) {
+            final long full = bucket.get();
+            final long start = full - now > 0 ? full : now;
+            final long wait = start - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(full, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+}
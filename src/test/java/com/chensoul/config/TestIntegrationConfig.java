@@ -16,6 +16,8 @@
 package com.chensoul.config;
 
 import com.maxmind.geoip2.DatabaseReader;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
@@ -43,6 +45,12 @@ public class TestIntegrationConfig {
     @MockBean
     private JavaMailSender javaMailSender;
 
+    // the mail health check expects the JavaMailSenderImpl the mock above replaces
+    @Bean
+    public HealthIndicator mailHealthContributor() {
+        return () -> Health.up().build();
+    }
+
     @MockBean(name = "GeoIPCountry")
     private DatabaseReader databaseReader;
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.AccountAttemptService;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.attempt.AccountBackoffException;
+import com.chensoul.security.google2fa.CustomAuthenticationProvider;
+import com.chensoul.security.google2fa.TotpVerifier;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+public class AccountAttemptServiceIntegrationTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AccountAttemptService accountAttemptService = new AccountAttemptService(3, Duration.ofSeconds(10), Duration.ofMinutes(1), Duration.ofHours(1), 1024,
+            meterRegistry);
+
+    @Test
+    public void givenFailuresBelowThreshold_whenLoggingIn_thenNoBackoff() {
+        accountAttemptService.loginFailed("john@test.com");
+        accountAttemptService.loginFailed("john@test.com");
+
+        assertEquals(0, accountAttemptService.getBackoffMillis("john@test.com"));
+    }
+
+    @Test
+    public void givenFailuresFromManyAddresses_whenThresholdReached_thenAccountIsBackedOffAndDelayGrows() {
+        for (int i = 0; i < 3; i++) {
+            accountAttemptService.loginFailed("John@Test.com");
+        }
+        final long first = accountAttemptService.getBackoffMillis("john@test.com");
+        accountAttemptService.loginFailed("john@test.com");
+        final long second = accountAttemptService.getBackoffMillis("john@test.com");
+
+        assertTrue(first > 0 && first <= 10_000);
+        assertTrue(second > 10_000 && second <= 20_000);
+        assertEquals(0, accountAttemptService.getBackoffMillis("jane@test.com"));
+    }
+
+    @Test
+    public void givenBackoff_whenLoginSucceeds_thenCleared() {
+        for (int i = 0; i < 3; i++) {
+            accountAttemptService.loginFailed("john@test.com");
+        }
+
+        accountAttemptService.loginSucceeded("john@test.com");
+
+        assertEquals(0, accountAttemptService.getBackoffMillis("john@test.com"));
+    }
+
+    @Test
+    public void givenBackoff_whenAuthenticating_thenRejectedWithoutLookupOrHashing() {
+        final LoginUserContext loginUserContext = mock(LoginUserContext.class);
+        final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        final CustomAuthenticationProvider provider = new CustomAuthenticationProvider(loginUserContext, new TotpVerifier(10), accountAttemptService);
+        provider.setUserDetailsService(mock(UserDetailsService.class));
+        provider.setPasswordEncoder(passwordEncoder);
+        for (int i = 0; i < 3; i++) {
+            accountAttemptService.loginFailed("john@test.com");
+        }
+
+        assertThrows(AccountBackoffException.class, () -> provider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("john@test.com", "guess")));
+
+        verifyNoInteractions(loginUserContext, passwordEncoder);
+        assertEquals(1, meterRegistry.get("security.login-attempts.account.rejected").counter().count());
+    }
+}
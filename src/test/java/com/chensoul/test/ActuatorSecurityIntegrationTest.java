@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.Application;
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.config.TestIntegrationConfig;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = {Application.class, TestDbConfig.class, TestIntegrationConfig.class})
+public class ActuatorSecurityIntegrationTest {
+
+    private final WebApplicationContext context;
+
+    private final FilterChainProxy springSecurityFilterChain;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context)
+                .addFilters(springSecurityFilterChain)
+                .build();
+    }
+
+    @Test
+    public void givenUser_whenReadingMetrics_thenForbidden() throws Exception {
+        mockMvc.perform(get("/actuator/metrics").session(session("ROLE_USER", "READ_PRIVILEGE")))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void givenAdmin_whenReadingMetrics_thenOk() throws Exception {
+        mockMvc.perform(get("/actuator/metrics").session(session("ROLE_ADMIN", "READ_PRIVILEGE")))
+                .andExpect(status().isOk());
+    }
+
+    // UTIL
+
+    private static MockHttpSession session(final String... authorities) {
+        final MockHttpSession session = new MockHttpSession();
+        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+                new UsernamePasswordAuthenticationToken("test@test.com", null, AuthorityUtils.createAuthorityList(authorities))));
+        return session;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.BlockedClientFilter;
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.attempt.InMemoryLoginAttemptStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class BlockedClientFilterIntegrationTest {
+
+    private final LoginAttemptService loginAttemptService = new LoginAttemptService(new MockHttpServletRequest(), new ClientIpResolver(List.of(), "X-Forwarded-For"), new InMemoryLoginAttemptStore(Duration.ofDays(1), 1024, new SimpleMeterRegistry()), LoginAttemptService.MAX_ATTEMPT,
+            100, 24, 64, List.of(), new SimpleMeterRegistry());
+
+    private final BlockedClientFilter filter = new BlockedClientFilter(loginAttemptService);
+
+    @Test
+    public void givenBlockedClient_whenPostingLogin_thenRejectedWithoutSession() throws Exception {
+        block("203.0.113.7");
+        final MockHttpServletRequest request = login("203.0.113.7");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertNull(chain.getRequest());
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    public void givenOtherClient_whenPostingLogin_thenPassedOn() throws Exception {
+        block("203.0.113.7");
+        final MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(login("203.0.113.8"), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    public void givenBlockedClient_whenLoadingLoginPage_thenPassedOn() throws Exception {
+        block("203.0.113.7");
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/login");
+        request.setServletPath("/login");
+        request.setRemoteAddr("203.0.113.7");
+        final MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+
+    //
+
+    private void block(final String ip) {
+        for (int i = 0; i < LoginAttemptService.MAX_ATTEMPT; i++) {
+            loginAttemptService.loginFailed(ip);
+        }
+    }
+
+    private static MockHttpServletRequest login(final String ip) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+        request.setServletPath("/login");
+        request.setRemoteAddr(ip);
+        return request;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.ClientAddress;
+import com.chensoul.security.ClientIpResolver;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ClientIpResolverIntegrationTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver(List.of("10.0.0.0/8", "2001:db8:ffff::/48"), "X-Forwarded-For");
+
+    @Test
+    public void givenUntrustedPeer_whenHeaderPresent_thenHeaderIgnored() {
+        assertEquals("203.0.113.9", resolve("203.0.113.9", "198.51.100.1"));
+    }
+
+    @Test
+    public void givenTrustedProxyChain_whenResolving_thenFirstUntrustedHopFromTheRight() {
+        assertEquals("198.51.100.1", resolve("10.0.0.2", "198.51.100.1"));
+        assertEquals("198.51.100.1", resolve("10.0.0.2", "1.2.3.4, 198.51.100.1, 10.0.0.1"));
+        assertEquals("2001:db8::7", resolve("2001:db8:ffff::1", " 2001:db8::7 ,\t10.9.9.9"));
+    }
+
+    @Test
+    public void givenGarbageHop_whenResolving_thenNearestTrustedHopIsUsed() {
+        assertEquals("10.0.0.1", resolve("10.0.0.2", "198.51.100.1, unknown, 10.0.0.1"));
+        assertEquals("10.0.0.2", resolve("10.0.0.2", "198.51.100.1,"));
+        assertEquals("10.0.0.2", resolve("10.0.0.2", ""));
+    }
+
+    @Test
+    public void givenOnlyTrustedHops_whenResolving_thenLeftmostHop() {
+        assertEquals("10.1.1.1", resolve("10.0.0.2", "10.1.1.1, 10.0.0.1"));
+    }
+
+    @Test
+    public void givenRepeatedHeaders_whenResolving_thenTreatedAsOneList() {
+        final MockHttpServletRequest request = request("10.0.0.2");
+        request.addHeader("X-Forwarded-For", "198.51.100.1");
+        request.addHeader("X-Forwarded-For", "198.51.100.2, 10.0.0.1");
+        assertEquals("198.51.100.2", resolver.resolveIp(request));
+    }
+
+    @Test
+    public void givenResolvedRequest_whenResolvingAgain_thenCachedAddressIsReturned() {
+        final MockHttpServletRequest request = request("10.0.0.2");
+        request.addHeader("X-Forwarded-For", "::ffff:198.51.100.1");
+        final ClientAddress first = resolver.resolve(request);
+
+        assertSame(first, resolver.resolve(request));
+        assertArrayEquals(new byte[]{(byte) 198, 51, 100, 1}, first.getAddress());
+        assertEquals("198.51.100.1", first.toInetAddress().getHostAddress());
+    }
+
+    @Test
+    public void givenNonLiteralPeer_whenResolving_thenUnresolvedAddress() {
+        final ClientAddress client = resolver.resolve(request("localhost"));
+        assertEquals("localhost", client.getIp());
+        assertFalse(client.isResolved());
+    }
+
+    //
+
+    private String resolve(final String remoteAddr, final String forwardedFor) {
+        final MockHttpServletRequest request = request(remoteAddr);
+        request.addHeader("X-Forwarded-For", forwardedFor);
+        return resolver.resolveIp(request);
+    }
+
+    private static MockHttpServletRequest request(final String remoteAddr) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+}
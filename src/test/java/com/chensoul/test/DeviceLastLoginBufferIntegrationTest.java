@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.persistence.dao.DeviceMetadataRepository;
+import com.chensoul.persistence.model.DeviceMetadata;
+import com.chensoul.service.DeviceLastLoginBuffer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Date;
+import lombok.RequiredArgsConstructor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = TestDbConfig.class)
+public class DeviceLastLoginBufferIntegrationTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final DeviceMetadataRepository deviceMetadataRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Long deviceId;
+
+    @BeforeEach
+    public void setUp() {
+        deviceMetadataRepository.deleteAll();
+        final DeviceMetadata device = new DeviceMetadata();
+        device.setUserId(1L);
+        device.setDeviceDetails("Chrome 71.0 - Mac OS X 10.14");
+        device.setLocation("Nuremberg");
+        device.setLastLoggedIn(new Date(T0));
+        deviceId = deviceMetadataRepository.save(device).getId();
+    }
+
+    @Test
+    public void givenSeveralLogins_whenFlushing_thenOnlyTheLatestIsWritten() {
+        final DeviceLastLoginBuffer buffer = buffer(100);
+        buffer.touch(deviceId, new Date(T0 + 2_000));
+        buffer.touch(deviceId, new Date(T0 + 3_000));
+        buffer.touch(deviceId, new Date(T0 + 1_000));
+
+        assertEquals(T0, lastLoggedIn());
+        buffer.flush();
+
+        assertEquals(T0 + 3_000, lastLoggedIn());
+        assertEquals(1, meterRegistry.get("device.last-login.flushed").counter().count());
+        assertEquals(0, meterRegistry.get("device.last-login.pending").gauge().value());
+    }
+
+    @Test
+    public void givenNewerStoredTime_whenFlushingAnOlderOne_thenItIsKept() {
+        final DeviceLastLoginBuffer otherNode = buffer(100);
+        otherNode.touch(deviceId, new Date(T0 + 5_000));
+        otherNode.flush();
+
+        final DeviceLastLoginBuffer buffer = buffer(100);
+        buffer.touch(deviceId, new Date(T0 + 4_000));
+        buffer.flush();
+
+        assertEquals(T0 + 5_000, lastLoggedIn());
+    }
+
+    @Test
+    public void givenFullBuffer_whenTouching_thenItFlushesEarly() {
+        final DeviceLastLoginBuffer buffer = buffer(1);
+        buffer.touch(deviceId, new Date(T0 + 1_000));
+
+        assertEquals(T0 + 1_000, lastLoggedIn());
+    }
+
+    @Test
+    public void givenFailedFlush_whenBufferIsFull_thenOnlyTheScheduledFlushRetries() {
+        final JdbcTemplate failing = mock(JdbcTemplate.class);
+        when(failing.batchUpdate(anyString(), anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        final DeviceLastLoginBuffer buffer = new DeviceLastLoginBuffer(failing, 1, meterRegistry);
+
+        buffer.touch(deviceId, new Date(T0 + 1_000));
+        buffer.touch(deviceId, new Date(T0 + 2_000));
+        verify(failing, times(1)).batchUpdate(anyString(), anyList());
+
+        buffer.flush();
+        verify(failing, times(2)).batchUpdate(anyString(), anyList());
+        assertEquals(1, meterRegistry.get("device.last-login.pending").gauge().value());
+    }
+
+    @Test
+    public void givenPendingTimes_whenClosing_thenTheyAreWritten() {
+        final DeviceLastLoginBuffer buffer = buffer(100);
+        buffer.touch(deviceId, new Date(T0 + 1_000));
+        buffer.close();
+
+        assertEquals(T0 + 1_000, lastLoggedIn());
+    }
+
+    // UTIL
+
+    private DeviceLastLoginBuffer buffer(final int maxPending) {
+        return new DeviceLastLoginBuffer(jdbcTemplate, maxPending, meterRegistry);
+    }
+
+    private long lastLoggedIn() {
+        return jdbcTemplate.queryForObject("SELECT last_logged_in FROM device_metadata WHERE id = ?", Date.class, deviceId).getTime();
+    }
+}
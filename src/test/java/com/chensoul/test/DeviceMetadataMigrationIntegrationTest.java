@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.DeviceMetadataMigration;
+import com.chensoul.persistence.dao.DeviceMetadataRepository;
+import com.chensoul.persistence.model.DeviceMetadata;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeviceMetadataMigrationIntegrationTest {
+
+    private final DeviceMetadataRepository deviceMetadataRepository = mock(DeviceMetadataRepository.class);
+
+    @Test
+    public void givenDetailsAndLocation_whenFingerprinting_thenPartsStayApart() {
+        assertEquals(64, DeviceMetadata.fingerprint("Chrome 71.0 - Mac OS X 10.14", "Nuremberg").length());
+        assertEquals(DeviceMetadata.fingerprint("a", "bc"), DeviceMetadata.fingerprint("a", "bc"));
+        assertNotEquals(DeviceMetadata.fingerprint("a", "bc"), DeviceMetadata.fingerprint("ab", "c"));
+    }
+
+    @Test
+    public void givenSettersCalled_whenReadingFingerprint_thenItFollowsDetailsAndLocation() {
+        final DeviceMetadata device = device(1L, "Chrome 71.0 - Mac OS X 10.14", "Nuremberg", null);
+        assertEquals(DeviceMetadata.fingerprint("Chrome 71.0 - Mac OS X 10.14", "Nuremberg"), device.getFingerprint());
+
+        device.setLocation("Barcelona");
+        assertEquals(DeviceMetadata.fingerprint("Chrome 71.0 - Mac OS X 10.14", "Barcelona"), device.getFingerprint());
+    }
+
+    @Test
+    public void givenLegacyDuplicates_whenMigrating_thenMostRecentIsKept() {
+        final DeviceMetadata older = legacy(1L, "Chrome 71.0 - Mac OS X 10.14", "Nuremberg", new Date(1000));
+        final DeviceMetadata newer = legacy(1L, "Chrome 71.0 - Mac OS X 10.14", "Nuremberg", new Date(2000));
+        final DeviceMetadata otherUser = legacy(2L, "Chrome 71.0 - Mac OS X 10.14", "Nuremberg", new Date(500));
+        when(deviceMetadataRepository.findByFingerprintIsNull()).thenReturn(List.of(older, newer, otherUser));
+
+        new DeviceMetadataMigration(deviceMetadataRepository).onApplicationEvent(null);
+
+        assertEquals(DeviceMetadata.fingerprint("Chrome 71.0 - Mac OS X 10.14", "Nuremberg"), newer.getFingerprint());
+        assertEquals(newer.getFingerprint(), otherUser.getFingerprint());
+        assertNull(older.getFingerprint());
+        verify(deviceMetadataRepository).deleteAllInBatch(List.of(older));
+        verify(deviceMetadataRepository).saveAll(argThat((Collection<DeviceMetadata> saved) -> saved.size() == 2 && saved.contains(newer)));
+    }
+
+    // UTIL
+
+    private static DeviceMetadata device(final Long userId, final String details, final String location, final Date lastLoggedIn) {
+        final DeviceMetadata device = new DeviceMetadata();
+        device.setUserId(userId);
+        device.setDeviceDetails(details);
+        device.setLocation(location);
+        device.setLastLoggedIn(lastLoggedIn);
+        return device;
+    }
+
+    private static DeviceMetadata legacy(final Long userId, final String details, final String location, final Date lastLoggedIn) {
+        final DeviceMetadata device = device(userId, details, location, lastLoggedIn);
+        device.setFingerprint(null);
+        return device;
+    }
+}
@@ -19,13 +19,15 @@ import com.chensoul.Application;
 import com.chensoul.config.TestDbConfig;
 import com.chensoul.config.TestIntegrationConfig;
 import com.chensoul.persistence.dao.DeviceMetadataRepository;
+import com.chensoul.persistence.dao.UserLocationRepository;
 import com.chensoul.persistence.dao.UserRepository;
 import com.chensoul.persistence.model.DeviceMetadata;
 import com.chensoul.persistence.model.User;
+import com.chensoul.persistence.model.UserLocation;
+import com.chensoul.service.DeviceLastLoginBuffer;
 import io.restassured.RestAssured;
 import static io.restassured.RestAssured.given;
 import io.restassured.response.Response;
-import java.util.Collections;
 import java.util.Date;
 import lombok.RequiredArgsConstructor;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -33,12 +35,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -54,9 +60,14 @@ public class DeviceServiceIntegrationTest {
 
     private final UserRepository userRepository;
 
+    private final UserLocationRepository userLocationRepository;
+
     @MockBean
     private DeviceMetadataRepository deviceMetadataRepository;
 
+    @MockBean
+    private DeviceLastLoginBuffer deviceLastLoginBuffer;
+
     private final PasswordEncoder passwordEncoder;
 
     private final JavaMailSender mailSender;
@@ -82,6 +93,15 @@ public class DeviceServiceIntegrationTest {
             user = userRepository.save(user);
         }
 
+        // the City lookup also yields the country, so keep the location check from stopping these logins
+        for (final String[] country : new String[][]{{"DE", "Germany"}, {"ES", "Spain"}}) {
+            if (userLocationRepository.findFirstByCountryCodeAndUserAndEnabledTrue(country[0], user) == null) {
+                final UserLocation location = new UserLocation(country[0], country[1], user);
+                location.setEnabled(true);
+                userLocationRepository.save(location);
+            }
+        }
+
         RestAssured.port = port;
         RestAssured.baseURI = "http://localhost";
         userId = user.getId();
@@ -97,7 +117,7 @@ public class DeviceServiceIntegrationTest {
 
         assertEquals(302, response.statusCode());
         assertEquals("http://localhost:" + port + "/console", response.getHeader("Location"));
-        verify(mailSender, times(1)).send(any(SimpleMailMessage.class));
+        verify(mailSender, timeout(5000).times(1)).send(any(SimpleMailMessage.class));
     }
 
     @Test
@@ -107,7 +127,7 @@ public class DeviceServiceIntegrationTest {
         existingDeviceMetadata.setLastLoggedIn(new Date());
         existingDeviceMetadata.setLocation("Nuremberg");
         existingDeviceMetadata.setDeviceDetails("Chrome 71.0 - Mac OS X 10.14");
-        when(deviceMetadataRepository.findByUserId(userId)).thenReturn(Collections.singletonList(existingDeviceMetadata));
+        when(deviceMetadataRepository.findByUserIdAndFingerprint(userId, existingDeviceMetadata.getFingerprint())).thenReturn(existingDeviceMetadata);
 
         final Response response = given()
                 .header("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_14_0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/71.0.3578.98 Safari/537.36")
@@ -117,6 +137,8 @@ public class DeviceServiceIntegrationTest {
 
         assertEquals(302, response.statusCode());
         assertEquals("http://localhost:" + port + "/console", response.getHeader("Location"));
+        // device verification runs after the response; it is done once the known device has been touched
+        verify(deviceLastLoginBuffer, timeout(5000)).touch(any(), any(Date.class));
         verify(mailSender, times(0)).send(any(SimpleMailMessage.class));
     }
 
@@ -127,7 +149,7 @@ public class DeviceServiceIntegrationTest {
         existingDeviceMetadata.setLastLoggedIn(new Date());
         existingDeviceMetadata.setLocation("Nuremberg");
         existingDeviceMetadata.setDeviceDetails("Chrome 71.0 - Mac OS X 10.14");
-        when(deviceMetadataRepository.findByUserId(userId)).thenReturn(Collections.singletonList(existingDeviceMetadata));
+        when(deviceMetadataRepository.findByUserIdAndFingerprint(userId, existingDeviceMetadata.getFingerprint())).thenReturn(existingDeviceMetadata);
 
         final Response response = given()
                 .header("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_14) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/12.0 Safari/605.1.15")
@@ -137,7 +159,7 @@ public class DeviceServiceIntegrationTest {
 
         assertEquals(302, response.statusCode());
         assertEquals("http://localhost:" + port + "/console", response.getHeader("Location"));
-        verify(mailSender, times(1)).send(any(SimpleMailMessage.class));
+        verify(mailSender, timeout(5000).times(1)).send(any(SimpleMailMessage.class));
     }
 
     @Test
@@ -147,7 +169,7 @@ public class DeviceServiceIntegrationTest {
         existingDeviceMetadata.setLastLoggedIn(new Date());
         existingDeviceMetadata.setLocation("Nuremberg");
         existingDeviceMetadata.setDeviceDetails("Chrome 71.0 - Mac OS X 10.14");
-        when(deviceMetadataRepository.findByUserId(userId)).thenReturn(Collections.singletonList(existingDeviceMetadata));
+        when(deviceMetadataRepository.findByUserIdAndFingerprint(userId, existingDeviceMetadata.getFingerprint())).thenReturn(existingDeviceMetadata);
 
         final Response response = given()
                 .header("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_14_0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/71.0.3578.98 Safari/537.36")
@@ -157,7 +179,26 @@ public class DeviceServiceIntegrationTest {
 
         assertEquals(302, response.statusCode());
         assertEquals("http://localhost:" + port + "/console", response.getHeader("Location"));
-        verify(mailSender, times(1)).send(any(SimpleMailMessage.class));
+        verify(mailSender, timeout(5000).times(1)).send(any(SimpleMailMessage.class));
+    }
+
+    @Test
+    public void givenConcurrentLoginInsertedDevice_whenVerifying_thenNoDuplicateAndNoSecondNotification() {
+        DeviceMetadata insertedConcurrently = new DeviceMetadata();
+        insertedConcurrently.setId(42L);
+        insertedConcurrently.setUserId(userId);
+        when(deviceMetadataRepository.findByUserIdAndFingerprint(eq(userId), anyString())).thenReturn(null, insertedConcurrently);
+        when(deviceMetadataRepository.saveAndFlush(any(DeviceMetadata.class))).thenThrow(new DataIntegrityViolationException("uk_device_metadata_user_fingerprint"));
+
+        final Response response = given()
+                .header("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_14_0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/71.0.3578.98 Safari/537.36")
+                .header("X-Forwarded-For", "88.198.50.103")
+                .formParams("username", "test@test.com", "password", "test")
+                .post("/login");
+
+        assertEquals(302, response.statusCode());
+        verify(deviceLastLoginBuffer, timeout(5000)).touch(eq(42L), any(Date.class));
+        verify(mailSender, times(0)).send(any(SimpleMailMessage.class));
     }
 
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.service.DeviceLogin;
+import com.chensoul.service.DeviceService;
+import com.chensoul.service.DeviceVerificationQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class DeviceVerificationQueueIntegrationTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final DeviceService deviceService = mock(DeviceService.class);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void givenFullQueue_whenDroppingOldest_thenNewestIsKept() throws Exception {
+        final CountDownLatch busy = blockFirstVerification();
+        final DeviceVerificationQueue queue = queue(DeviceVerificationQueue.DROP_OLDEST);
+        final DeviceLogin first = login(1L);
+        final DeviceLogin oldest = login(2L);
+        final DeviceLogin newest = login(3L);
+
+        queue.submit(first);
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        queue.submit(oldest);
+        queue.submit(newest);
+        assertEquals(1, meterRegistry.get("login.notification.queue").gauge().value());
+        release.countDown();
+
+        verify(deviceService, timeout(5000)).verifyDevice(newest);
+        verify(deviceService, never()).verifyDevice(oldest);
+        assertEquals(1, meterRegistry.get("login.notification.dropped").counter().count());
+        queue.shutdown();
+    }
+
+    @Test
+    public void givenFullQueue_whenCallerRuns_thenSubmitterVerifies() throws Exception {
+        final CountDownLatch busy = blockFirstVerification();
+        final DeviceVerificationQueue queue = queue(DeviceVerificationQueue.CALLER_RUNS);
+        final DeviceLogin overflow = login(3L);
+
+        queue.submit(login(1L));
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+        queue.submit(login(2L));
+        queue.submit(overflow);
+
+        // ran on this thread before submit returned
+        verify(deviceService).verifyDevice(overflow);
+        release.countDown();
+        queue.shutdown();
+        assertEquals(3, meterRegistry.get("login.notification.processing").timer().count());
+    }
+
+    @Test
+    public void givenFailingVerification_whenProcessed_thenCountedAndQueueKeepsRunning() throws Exception {
+        final DeviceLogin failing = login(1L);
+        final DeviceLogin next = login(2L);
+        doThrow(new IllegalStateException("smtp down")).when(deviceService).verifyDevice(failing);
+        final DeviceVerificationQueue queue = queue(DeviceVerificationQueue.CALLER_RUNS);
+
+        queue.submit(failing);
+        queue.submit(next);
+
+        verify(deviceService, timeout(5000)).verifyDevice(next);
+        queue.shutdown();
+        assertEquals(1, meterRegistry.get("login.notification.failed").counter().count());
+    }
+
+    @Test
+    public void givenStoppedQueue_whenSubmitting_thenCountedAsDropped() throws Exception {
+        final DeviceVerificationQueue callerRuns = queue(DeviceVerificationQueue.CALLER_RUNS);
+        final DeviceVerificationQueue dropOldest = queue(DeviceVerificationQueue.DROP_OLDEST);
+        callerRuns.shutdown();
+        dropOldest.shutdown();
+
+        callerRuns.submit(login(1L));
+        dropOldest.submit(login(2L));
+
+        verify(deviceService, never()).verifyDevice(any(DeviceLogin.class));
+        assertEquals(2, meterRegistry.get("login.notification.dropped").counter().count());
+    }
+
+    @Test
+    public void givenUnknownPolicy_whenCreating_thenRejected() {
+        assertThrows(IllegalArgumentException.class, () -> queue("drop-newest"));
+    }
+
+    // UTIL
+
+    private DeviceVerificationQueue queue(final String policy) {
+        return new DeviceVerificationQueue(deviceService, 1, 1, policy, Duration.ofSeconds(5), meterRegistry);
+    }
+
+    private CountDownLatch blockFirstVerification() {
+        final CountDownLatch busy = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (busy.getCount() > 0) {
+                busy.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(deviceService).verifyDevice(any(DeviceLogin.class));
+        return busy;
+    }
+
+    private static DeviceLogin login(final Long userId) {
+        return new DeviceLogin(userId, "test@test.com", "88.198.50.103", "Nuremberg", "curl/8.0", Locale.ENGLISH, new Date());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.service.GeoIpService;
+import com.chensoul.service.GeoLocation;
+import com.chensoul.service.ReloadableDatabaseReader;
+import com.maxmind.geoip2.DatabaseReader;
+import com.maxmind.geoip2.model.CityResponse;
+import com.maxmind.geoip2.record.City;
+import com.maxmind.geoip2.record.Country;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Optional;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import org.springframework.core.io.ClassPathResource;
+
+public class GeoIpServiceIntegrationTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final DatabaseReader countryReader = mock(DatabaseReader.class);
+
+    private final DatabaseReader cityReader = mock(DatabaseReader.class);
+
+    private final GeoIpService geoIpService = new GeoIpService(countryReader, cityReader, 1000, Duration.ofHours(1), meterRegistry);
+
+    @Test
+    public void givenCityDatabase_whenLocating_thenOneLookupAnswersCountryCityAndCoordinates() throws Exception {
+        final CityResponse response = mock(CityResponse.class);
+        final Country country = mock(Country.class);
+        when(country.getIsoCode()).thenReturn("DE");
+        when(country.getName()).thenReturn("Germany");
+        final City city = city("Nuremberg");
+        when(response.getCountry()).thenReturn(country);
+        when(response.getCity()).thenReturn(city);
+        when(cityReader.tryCity(any(InetAddress.class))).thenReturn(Optional.of(response));
+
+        final GeoLocation location = geoIpService.locate("88.198.50.103");
+
+        assertEquals("DE", location.getCountryCode());
+        assertEquals("Germany", location.getCountry());
+        assertEquals("Nuremberg", location.getCity());
+        assertNull(location.getLatitude());
+        verify(cityReader, times(1)).tryCity(any(InetAddress.class));
+        verifyNoInteractions(countryReader);
+    }
+
+    @Test
+    public void givenNoCityDatabase_whenLocating_thenCountryDatabaseAnswers() throws IOException {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (ReloadableDatabaseReader country = new ReloadableDatabaseReader("country", null, new ClassPathResource("maxmind/GeoLite2-Country.mmdb"), 64);
+             ReloadableDatabaseReader city = new ReloadableDatabaseReader("city", null, null, 64)) {
+            final GeoIpService service = new GeoIpService(country, city, 1000, Duration.ofHours(1), registry);
+
+            assertEquals("Germany", service.locate("88.198.50.103").getCountry());
+            assertEquals("DE", service.locate("88.198.50.103").getCountryCode());
+            assertEquals("Spain", service.locate("81.47.169.143").getCountry());
+            assertEquals("Germany", service.locate("::ffff:88.198.50.103").getCountry());
+            assertNull(service.locate("88.198.50.103").getCity());
+
+            assertEquals(3, registry.get("cache.gets").tag("cache", "geoip.location").tag("result", "hit").functionCounter().count());
+        }
+    }
+
+    @Test
+    public void givenPrivateOrInvalidAddress_whenLocating_thenUnknown() throws Exception {
+        when(cityReader.tryCity(any(InetAddress.class))).thenReturn(Optional.empty());
+
+        assertFalse(geoIpService.locate("10.0.0.1").isKnown());
+        assertFalse(geoIpService.locate("10.0.0.1").isKnown());
+        assertSame(GeoLocation.UNKNOWN, geoIpService.locate("localhost"));
+        assertSame(GeoLocation.UNKNOWN, geoIpService.locate((String) null));
+
+        assertEquals(1, hits());
+    }
+
+    @Test
+    public void givenAddressesInOneSlash64_whenLocating_thenDatabaseIsReadOnce() throws Exception {
+        final CityResponse response = mock(CityResponse.class);
+        final City city = city("Nuremberg");
+        when(response.getCity()).thenReturn(city);
+        when(cityReader.tryCity(any(InetAddress.class))).thenReturn(Optional.of(response));
+
+        assertEquals("Nuremberg", geoIpService.locate("2a01:4f8:1:2::1").getCity());
+        assertEquals("Nuremberg", geoIpService.locate("2a01:4f8:1:2:abcd::7").getCity());
+        assertEquals("Nuremberg", geoIpService.locate("2a01:4f8:1:3::1").getCity());
+
+        verify(cityReader, times(2)).tryCity(any(InetAddress.class));
+    }
+
+    @Test
+    public void givenFailingLookup_whenRetried_thenNotServedFromCache() throws Exception {
+        when(cityReader.tryCity(any(InetAddress.class))).thenThrow(new IOException("broken")).thenReturn(Optional.empty());
+
+        assertNull(geoIpService.locate("88.198.50.103"));
+        assertSame(GeoLocation.UNKNOWN, geoIpService.locate("88.198.50.103"));
+        assertSame(GeoLocation.UNKNOWN, geoIpService.locate("88.198.50.103"));
+
+        verify(cityReader, times(2)).tryCity(any(InetAddress.class));
+    }
+
+    @Test
+    public void givenHostName_whenLocating_thenNoLookupAndNoDns() throws Exception {
+        assertSame(GeoLocation.UNKNOWN, geoIpService.locate("example.com"));
+        verify(cityReader, never()).tryCity(any(InetAddress.class));
+    }
+
+    //
+
+    private static City city(final String name) {
+        final City city = mock(City.class);
+        when(city.getName()).thenReturn(name);
+        return city;
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets").tag("cache", "geoip.location").tag("result", "hit").functionCounter().count();
+    }
+}
@@ -29,7 +29,30 @@ import org.junit.runner.RunWith;
     UserServiceIntegrationTest.class,
     UserIntegrationTest.class,
     SpringSecurityRolesIntegrationTest.class,
-    LocalizationIntegrationTest.class
+    LocalizationIntegrationTest.class,
+    UserCacheEvictionIntegrationTest.class,
+    ActuatorSecurityIntegrationTest.class,
+    UserAuthenticationQueryIntegrationTest.class,
+    RoleAuthorityRegistryIntegrationTest.class,
+    LoginQueryCountIntegrationTest.class,
+    PasswordHashUpgradeIntegrationTest.class,
+    PasswordHashingGateIntegrationTest.class,
+    TotpVerifierIntegrationTest.class,
+    SlidingWindowCounterIntegrationTest.class,
+    BlockedClientFilterIntegrationTest.class,
+    AccountAttemptServiceIntegrationTest.class,
+    SubnetBlockingIntegrationTest.class,
+    ClientIpResolverIntegrationTest.class,
+    JdbcLoginAttemptStoreIntegrationTest.class,
+    RateLimitIntegrationTest.class,
+    GeoIpServiceIntegrationTest.class,
+    ReloadableDatabaseReaderIntegrationTest.class,
+    IpAddressesIntegrationTest.class,
+    KnownLocationIntegrationTest.class,
+    UserAgentServiceIntegrationTest.class,
+    DeviceMetadataMigrationIntegrationTest.class,
+    DeviceVerificationQueueIntegrationTest.class,
+    DeviceLastLoginBufferIntegrationTest.class
 })// @formatter:on
 public class IntegrationSuite {
   //
@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.attempt.IpAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the literal parser against {@link InetAddress#getByName(String)}, which never resolves anything for the
+ * inputs it is given here: only strings already accepted as literals, or strings starting like an IPv6 literal,
+ * which the JDK rejects without a lookup.
+ */
+public class IpAddressesIntegrationTest {
+
+    private static final String ALPHABET = "0123456789aAfF:.x";
+
+    private final Random random = new Random(20240601);
+
+    @Test
+    public void givenLiterals_whenParsing_thenAddressBytes() throws Exception {
+        assertArrayEquals(new byte[]{(byte) 203, 0, 113, 7}, IpAddresses.parse("203.0.113.7"));
+        assertArrayEquals(new byte[]{(byte) 203, 0, 113, 7}, IpAddresses.parse(" ::FFFF:203.0.113.7\t"));
+        assertArrayEquals(new byte[]{(byte) 203, 0, 113, 7}, IpAddresses.parse("::ffff:cb00:7107"));
+        assertArrayEquals(InetAddress.getByName("::1").getAddress(), IpAddresses.parse("::1"));
+        assertArrayEquals(InetAddress.getByName("::203.0.113.7").getAddress(), IpAddresses.parse("::203.0.113.7"));
+        assertArrayEquals(InetAddress.getByName("2001:db8::").getAddress(), IpAddresses.parse("2001:DB8:0:0::"));
+        assertArrayEquals(InetAddress.getByName("1:0:3:4:5:6:7:8").getAddress(), IpAddresses.parse("1::3:4:5:6:7:8"));
+        assertArrayEquals(InetAddress.getByName("2001:db8::1").getAddress(), IpAddresses.parse("x2001:db8::1", 1, 12));
+    }
+
+    @Test
+    public void givenNonLiterals_whenParsing_thenNull() {
+        final String[] rejected = {"", " ", "localhost", "example.com", "1.2.3", "1.2.3.4.5", "01.2.3.4", "1.2.3.256",
+                "1.2.3.4 x", "1.2.3.4.", "1.2.3.-4", "1..3.4", "+1.2.3.4", "0x1.2.3.4", "4294967295", "[::1]",
+                "fe80::1%eth0", "::1/128", ":", ":::", "1:::2", "1::2::3", ":1::2", "1::2:", "1:2:3:4:5:6:7",
+                "1:2:3:4:5:6:7:8:9", "1::2:3:4:5:6:7:8", "12345::", "g::", "::ffff:1.2.3", "1:2:3:4:5:6:7:1.2.3.4",
+                "::1.2.3.4:5", "::ffff:01.2.3.4"};
+        for (final String text : rejected) {
+            assertNull(IpAddresses.parse(text), text);
+        }
+        assertNull(IpAddresses.parse(null));
+        assertNull(IpAddresses.parse("1".repeat(1 << 20)));
+        assertNull(IpAddresses.parse("1:".repeat(1 << 19)));
+    }
+
+    @Test
+    public void givenRandomAddresses_whenFormattedAnyWay_thenParsedBack() throws Exception {
+        for (int i = 0; i < 20_000; i++) {
+            final byte[] address = new byte[random.nextInt(4) == 0 ? IpAddresses.IPV4_LENGTH : IpAddresses.IPV6_LENGTH];
+            random.nextBytes(address);
+            if (address.length == IpAddresses.IPV6_LENGTH) {
+                // zero runs exercise "::" compression
+                for (int b = 0; b < address.length; b++) {
+                    if (random.nextInt(3) == 0) {
+                        address[b] = 0;
+                    }
+                }
+            }
+            final byte[] expected = InetAddress.getByAddress(address).getAddress();
+            final String full = InetAddress.getByAddress(address).getHostAddress();
+            assertArrayEquals(expected, IpAddresses.parse(full), full);
+            assertArrayEquals(expected, IpAddresses.parse(full.toUpperCase()), full);
+            if (address.length == IpAddresses.IPV6_LENGTH) {
+                final String compressed = compress(address);
+                assertArrayEquals(expected, IpAddresses.parse(compressed), compressed);
+                assertArrayEquals(expected, InetAddress.getByName(compressed).getAddress(), compressed);
+            } else {
+                final String mapped = "::ffff:" + full;
+                assertArrayEquals(expected, IpAddresses.parse(mapped), mapped);
+            }
+        }
+    }
+
+    @Test
+    public void givenMutatedLiterals_whenParsing_thenSameVerdictAsTheJdk() throws Exception {
+        final String[] seeds = {"203.0.113.7", "2001:db8::1", "::ffff:203.0.113.7", "1:2:3:4:5:6:7:8", "::", "fe80::a:b:c:d"};
+        int accepted = 0;
+        for (int i = 0; i < 200_000; i++) {
+            final String text = mutate(seeds[random.nextInt(seeds.length)]);
+            final byte[] parsed = IpAddresses.parse(text);
+            if (parsed != null) {
+                accepted++;
+                assertArrayEquals(jdk(text), parsed, text);
+            } else if (text.indexOf(':') >= 0 && text.indexOf('.') < 0 && startsLikeIpv6(text) && !hasLongGroup(text)) {
+                // the JDK also takes leading zeros in embedded IPv4 and groups of more than four digits, so
+                // only forms RFC 4291 allows are compared this way
+                assertNull(jdk(text), text);
+            }
+        }
+        assertTrue(accepted > 0);
+    }
+
+    @Test
+    public void givenIpv4MappedAddress_whenParsing_thenSameAsIpv4() {
+        assertEquals(IpAddresses.IPV4_LENGTH, IpAddresses.parse("::ffff:10.0.0.1").length);
+        assertEquals(IpAddresses.IPV6_LENGTH, IpAddresses.parse("::fffe:10.0.0.1").length);
+        assertEquals(IpAddresses.IPV6_LENGTH, IpAddresses.parse("1::ffff:10.0.0.1").length);
+    }
+
+    @Test
+    public void givenReusedBuffer_whenParsing_thenSameAsFreshParse() {
+        final byte[] buffer = new byte[IpAddresses.IPV6_LENGTH];
+        for (int i = 0; i < 10_000; i++) {
+            final String text = mutate(i % 2 == 0 ? "2001:db8::ffff:1" : "::ffff:203.0.113.7");
+            final byte[] expected = IpAddresses.parse(text);
+            final int length = IpAddresses.parse(text, 0, text.length(), buffer);
+            if (expected == null) {
+                assertEquals(-1, length, text);
+            } else {
+                assertArrayEquals(expected, Arrays.copyOf(buffer, length), text);
+            }
+        }
+    }
+
+    // UTIL
+
+    private String mutate(final String seed) {
+        final StringBuilder text = new StringBuilder(seed);
+        final int edits = 1 + random.nextInt(3);
+        for (int e = 0; e < edits; e++) {
+            final int at = random.nextInt(text.length() + 1);
+            final char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (random.nextInt(3)) {
+                case 0 -> text.insert(at, c);
+                case 1 -> {
+                    if (at < text.length()) {
+                        text.deleteCharAt(at);
+                    }
+                }
+                default -> {
+                    if (at < text.length()) {
+                        text.setCharAt(at, c);
+                    }
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static boolean startsLikeIpv6(final String text) {
+        return !text.isEmpty() && (text.charAt(0) == ':' || Character.digit(text.charAt(0), 16) >= 0);
+    }
+
+    private static boolean hasLongGroup(final String text) {
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            digits = text.charAt(i) == ':' ? 0 : digits + 1;
+            if (digits > 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] jdk(final String literal) {
+        try {
+            return InetAddress.getByName(literal).getAddress();
+        } catch (final UnknownHostException e) {
+            return null;
+        } catch (final IllegalArgumentException e) {
+            fail("JDK rejected " + literal + " without reporting an unknown host");
+            return null;
+        }
+    }
+
+    private static String compress(final byte[] address) {
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int g = 0; g < 8; ) {
+            int end = g;
+            while (end < 8 && address[end * 2] == 0 && address[end * 2 + 1] == 0) {
+                end++;
+            }
+            if (end - g > bestLength) {
+                bestStart = g;
+                bestLength = end - g;
+            }
+            g = Math.max(end, g + 1);
+        }
+        final StringBuilder text = new StringBuilder();
+        for (int g = 0; g < 8; g++) {
+            if (g == bestStart) {
+                text.append("::");
+                g += bestLength - 1;
+                continue;
+            }
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+            text.append(Integer.toHexString(((address[g * 2] & 0xff) << 8) | (address[g * 2 + 1] & 0xff)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.security.attempt.JdbcLoginAttemptStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.RequiredArgsConstructor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = TestDbConfig.class)
+@ActiveProfiles("h2")
+public class JdbcLoginAttemptStoreIntegrationTest {
+
+    private static final Duration WINDOW = Duration.ofHours(1);
+    private static final long KEY = 42;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PlatformTransactionManager transactionManager;
+
+    private final AtomicLong clock = new AtomicLong(1_000 * WINDOW.toMillis());
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("DELETE FROM login_attempt");
+    }
+
+    @Test
+    public void givenTwoNodes_whenOneFlushes_thenTheOtherSeesTheFailuresFromItsOwnFirstOne() throws InterruptedException {
+        final JdbcLoginAttemptStore first = node();
+        final JdbcLoginAttemptStore second = node();
+
+        first.increment(KEY);
+        first.increment(KEY);
+        assertEquals(3, first.increment(KEY));
+        assertEquals(0, second.get(KEY));
+
+        first.flush();
+
+        assertEquals(3, first.get(KEY));
+        assertEquals(1, second.increment(KEY));
+        awaitCount(second, 4);
+    }
+
+    @Test
+    public void givenKeysThatNeverFailedHere_whenReading_thenNoQuery() throws InterruptedException {
+        final AtomicInteger queries = new AtomicInteger();
+        final JdbcTemplate counting = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public void query(final String sql, final RowCallbackHandler rch, final Object... args) {
+                queries.incrementAndGet();
+                super.query(sql, rch, args);
+            }
+        };
+        final JdbcLoginAttemptStore other = node();
+        other.increment(KEY);
+        other.flush();
+        // refreshed rarely, so the only query is the first load
+        final JdbcLoginAttemptStore store = new JdbcLoginAttemptStore(counting, transactionManager, WINDOW, 1024, WINDOW,
+                new SimpleMeterRegistry(), clock::get);
+
+        for (long key = 0; key < 1000; key++) {
+            assertEquals(0, store.get(key));
+        }
+        assertEquals(0, queries.get());
+
+        store.increment(KEY);
+        awaitCount(store, 2);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void givenFlushedCounts_whenLoadedAndFlushedAgain_thenEachIsCountedOnce() throws InterruptedException {
+        final JdbcLoginAttemptStore store = node();
+        store.increment(KEY);
+        store.increment(KEY);
+        store.flush();
+        awaitLoaded(store);
+        store.increment(KEY);
+        store.flush();
+
+        assertEquals(3, store.get(KEY));
+        awaitLoaded(store);
+        store.flush();
+        assertEquals(3, store.get(KEY));
+    }
+
+    @Test
+    public void givenUnavailableDatabase_whenFlushFails_thenCountsAreKeptOnce() {
+        final JdbcTemplate failing = mock(JdbcTemplate.class);
+        when(failing.batchUpdate(anyString(), anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        final JdbcLoginAttemptStore store = new JdbcLoginAttemptStore(failing, transactionManager, WINDOW, 1024, Duration.ofMillis(1),
+                new SimpleMeterRegistry(), clock::get);
+        store.increment(KEY);
+        store.increment(KEY);
+
+        store.flush();
+        assertEquals(2, store.get(KEY));
+        store.flush();
+
+        assertEquals(2, store.get(KEY));
+        assertEquals(3, store.increment(KEY));
+    }
+
+    @Test
+    public void givenExistingRow_whenFlushingAgain_thenCountsAreAdded() {
+        final JdbcLoginAttemptStore store = node();
+        store.increment(KEY);
+        store.flush();
+        store.increment(KEY);
+        store.increment(KEY);
+        store.flush();
+
+        assertEquals(3L, jdbcTemplate.queryForObject("SELECT failures FROM login_attempt WHERE attempt_key = ?", Long.class, KEY));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM login_attempt", Integer.class));
+    }
+
+    @Test
+    public void givenDriverWithoutUpdateCounts_whenFlushingAgain_thenCountsAreAdded() {
+        // what MySQL Connector/J reports for batches it rewrites under rewriteBatchedStatements=true
+        final JdbcTemplate rewriting = new JdbcTemplate(jdbcTemplate.getDataSource()) {
+            @Override
+            public int[] batchUpdate(final String sql, final List<Object[]> batchArgs) {
+                final int[] counts = super.batchUpdate(sql, batchArgs);
+                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                return counts;
+            }
+        };
+        final JdbcLoginAttemptStore store = new JdbcLoginAttemptStore(rewriting, transactionManager, WINDOW, 1024, Duration.ofMillis(1),
+                new SimpleMeterRegistry(), clock::get);
+        store.increment(KEY);
+        store.increment(KEY + 1);
+        store.flush();
+        store.increment(KEY);
+        store.increment(KEY);
+        store.flush();
+
+        assertEquals(3L, jdbcTemplate.queryForObject("SELECT failures FROM login_attempt WHERE attempt_key = ?", Long.class, KEY));
+        assertEquals(1L, jdbcTemplate.queryForObject("SELECT failures FROM login_attempt WHERE attempt_key = ?", Long.class, KEY + 1));
+    }
+
+    @Test
+    public void givenPreviousWindow_whenHalfOfItHasSlidPast_thenItCountsHalf() throws InterruptedException {
+        final JdbcLoginAttemptStore store = node();
+        for (int i = 0; i < 4; i++) {
+            store.increment(KEY);
+        }
+        store.flush();
+
+        clock.addAndGet(WINDOW.toMillis() * 3 / 2);
+        awaitCount(store, 2);
+    }
+
+    @Test
+    public void givenOldRows_whenPurging_thenOnlyTheLastTwoWindowsRemain() {
+        final JdbcLoginAttemptStore store = node();
+        for (int i = 0; i < 3; i++) {
+            store.increment(KEY);
+            store.flush();
+            clock.addAndGet(WINDOW.toMillis());
+        }
+
+        store.purge();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM login_attempt", Integer.class));
+    }
+
+    //
+
+    private JdbcLoginAttemptStore node() {
+        return new JdbcLoginAttemptStore(jdbcTemplate, transactionManager, WINDOW, 1024, Duration.ofMillis(1), new SimpleMeterRegistry(), clock::get);
+    }
+
+    /**
+     * Reads for a while so the cache reloads the key after the last flush, then flushes to drop what it caught up with.
+     */
+    private static void awaitLoaded(final JdbcLoginAttemptStore store) throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            store.get(KEY);
+            Thread.sleep(20);
+        }
+        store.flush();
+    }
+
+    private static void awaitCount(final JdbcLoginAttemptStore store, final long expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (store.get(KEY) != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, store.get(KEY));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.UserLocationMigration;
+import com.chensoul.persistence.dao.UserLocationRepository;
+import com.chensoul.persistence.model.User;
+import com.chensoul.persistence.model.UserLocation;
+import com.chensoul.security.location.CountrySet;
+import com.chensoul.security.location.KnownLocationCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class KnownLocationIntegrationTest {
+
+    private final UserLocationRepository userLocationRepository = mock(UserLocationRepository.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    public void givenCountryCodes_whenBuildingSet_thenOnlyThoseAreContained() {
+        final CountrySet countries = CountrySet.of(List.of("DE", "es", "XK", "ZZ", "AA", "Germany", ""));
+
+        assertTrue(countries.contains("DE"));
+        assertTrue(countries.contains("de"));
+        assertTrue(countries.contains("ES"));
+        assertTrue(countries.contains("XK"));
+        assertTrue(countries.contains("ZZ"));
+        assertTrue(countries.contains("AA"));
+        assertFalse(countries.contains("FR"));
+        assertFalse(countries.contains("ED"));
+        assertFalse(countries.contains(null));
+        assertEquals(5, countries.size());
+    }
+
+    @Test
+    public void givenSet_whenAddingCountry_thenCopyContainsIt() {
+        final CountrySet countries = CountrySet.of(List.of("DE"));
+        final CountrySet more = countries.with("FR");
+
+        assertFalse(countries.contains("FR"));
+        assertTrue(more.contains("FR"));
+        assertTrue(more.contains("DE"));
+        assertSame(more, more.with("FR"));
+        assertSame(more, more.with("France"));
+        assertEquals(CountrySet.EMPTY, CountrySet.of(List.of()));
+    }
+
+    @Test
+    public void givenUser_whenCheckingRepeatedly_thenCountriesAreLoadedOnce() {
+        when(userLocationRepository.findEnabledCountryCodesByUserId(1L)).thenReturn(List.of("DE", "ES"));
+        final KnownLocationCache cache = new KnownLocationCache(userLocationRepository, 100, Duration.ofHours(1), new SimpleMeterRegistry());
+
+        assertTrue(cache.isKnown(1L, "DE"));
+        assertTrue(cache.isKnown(1L, "ES"));
+        assertFalse(cache.isKnown(1L, "FR"));
+
+        cache.add(1L, "FR");
+        assertTrue(cache.isKnown(1L, "FR"));
+
+        verify(userLocationRepository, times(1)).findEnabledCountryCodesByUserId(1L);
+    }
+
+    @Test
+    public void givenUnloadedUser_whenAddingCountry_thenNextLoadReadsTheDatabase() {
+        when(userLocationRepository.findEnabledCountryCodesByUserId(2L)).thenReturn(List.of("FR"));
+        final KnownLocationCache cache = new KnownLocationCache(userLocationRepository, 100, Duration.ofHours(1), new SimpleMeterRegistry());
+
+        cache.add(2L, "DE");
+
+        assertTrue(cache.isKnown(2L, "FR"));
+        assertFalse(cache.isKnown(2L, "DE"));
+    }
+
+    @Test
+    public void givenLocationsWithoutCode_whenMigrating_thenCodeIsTakenFromTheName() {
+        final User user = new User();
+        final UserLocation germany = new UserLocation("Germany", user);
+        final UserLocation spain = new UserLocation("spain", user);
+        final UserLocation atlantis = new UserLocation("Atlantis", user);
+        final List<UserLocation> locations = List.of(germany, spain, atlantis);
+        when(userLocationRepository.findByCountryCodeIsNullAndIdGreaterThanOrderByIdAsc(eq(0L), any())).thenReturn(locations);
+
+        new UserLocationMigration(userLocationRepository, transactionManager).onApplicationEvent(null);
+
+        assertEquals("DE", germany.getCountryCode());
+        assertEquals("ES", spain.getCountryCode());
+        assertEquals(UserLocationMigration.UNMATCHED, atlantis.getCountryCode());
+        verify(userLocationRepository).saveAll(locations);
+    }
+
+    @Test
+    public void givenMaxMindCountryNames_whenMigrating_thenTheyAreMatched() {
+        final Map<String, String> expected = Map.of("Hong Kong", "HK", "Macao", "MO", "Myanmar", "MM", "Palestine", "PS",
+                "Ivory Coast", "CI", "DR Congo", "CD", "Congo Republic", "CG", "St Kitts and Nevis", "KN",
+                "Bosnia and Herzegovina", "BA", "Kosovo", "XK");
+        final User user = new User();
+        final List<UserLocation> locations = expected.keySet().stream().map(name -> new UserLocation(name, user)).toList();
+        when(userLocationRepository.findByCountryCodeIsNullAndIdGreaterThanOrderByIdAsc(eq(0L), any())).thenReturn(locations);
+
+        new UserLocationMigration(userLocationRepository, transactionManager).onApplicationEvent(null);
+
+        for (final UserLocation location : locations) {
+            assertEquals(expected.get(location.getCountry()), location.getCountryCode(), location.getCountry());
+        }
+    }
+
+    @Test
+    public void givenMoreLocationsThanOneBatch_whenMigrating_thenEachBatchHasItsOwnTransaction() {
+        final User user = new User();
+        final List<UserLocation> first = new ArrayList<>();
+        for (long id = 1; id <= UserLocationMigration.BATCH_SIZE; id++) {
+            final UserLocation location = new UserLocation("Germany", user);
+            location.setId(id);
+            first.add(location);
+        }
+        final UserLocation last = new UserLocation("Atlantis", user);
+        when(userLocationRepository.findByCountryCodeIsNullAndIdGreaterThanOrderByIdAsc(eq(0L), any())).thenReturn(first);
+        when(userLocationRepository.findByCountryCodeIsNullAndIdGreaterThanOrderByIdAsc(eq((long) UserLocationMigration.BATCH_SIZE), any()))
+                .thenReturn(List.of(last));
+
+        new UserLocationMigration(userLocationRepository, transactionManager).onApplicationEvent(null);
+
+        assertEquals("DE", first.get(first.size() - 1).getCountryCode());
+        assertEquals(UserLocationMigration.UNMATCHED, last.getCountryCode());
+        verify(userLocationRepository).saveAll(first);
+        verify(userLocationRepository).saveAll(List.of(last));
+        verify(transactionManager, times(2)).commit(any());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.Application;
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.persistence.model.User;
+import com.chensoul.security.CaffeineUserCache;
+import com.chensoul.security.RoleAuthorityRegistry;
+import com.maxmind.geoip2.DatabaseReader;
+import io.restassured.RestAssured;
+import static io.restassured.RestAssured.given;
+import io.restassured.response.Response;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * A form login must load the user exactly once, however many components look at it.
+ */
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = {Application.class, TestDbConfig.class}, properties = "spring.jpa.properties.hibernate.generate_statistics=true",
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class LoginQueryCountIntegrationTest {
+
+    private final UserRepository userRepository;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final CaffeineUserCache userCache;
+
+    private final RoleAuthorityRegistry roleAuthorityRegistry;
+
+    @MockBean(name = "GeoIPCity")
+    private DatabaseReader databaseReader;
+
+    @Value("${local.server.port}")
+    int port;
+
+    @BeforeEach
+    public void init() {
+        final User user = userRepository.findByEmail("test@test.com");
+        user.setPassword(passwordEncoder.encode("test"));
+        userRepository.save(user);
+
+        RestAssured.port = port;
+        RestAssured.baseURI = "http://localhost";
+    }
+
+    @Test
+    public void givenUncachedUser_whenLoggingIn_thenSingleStatementIsIssued() {
+        userCache.removeAllUsersFromCache();
+        roleAuthorityRegistry.getAuthorities("ROLE_ADMIN");
+        final Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        final Response response = given()
+                .formParams("username", "test@test.com", "password", "test")
+                .post("/login");
+
+        assertEquals(302, response.statusCode());
+        assertEquals("http://localhost:" + port + "/console", response.getHeader("Location"));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.persistence.dao.RoleRepository;
+import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.persistence.model.User;
+import com.chensoul.security.CaffeineUserCache;
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.ConfigurablePasswordEncoder;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.MyUserDetailsService;
+import com.chensoul.security.RoleAuthorityRegistry;
+import com.chensoul.security.attempt.InMemoryLoginAttemptStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Transactional;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = TestDbConfig.class)
+@Transactional
+public class PasswordHashUpgradeIntegrationTest {
+
+    private final UserRepository userRepository;
+
+    private final RoleRepository roleRepository;
+
+    private final EntityManager entityManager;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Test
+    public void givenLegacyBcryptHash_whenTargetIsArgon2_thenHashIsUpgradedOnLogin() {
+        final String email = createUser(ConfigurablePasswordEncoder.bcrypt(4).encode("123"));
+        final ConfigurablePasswordEncoder encoder = encoder(ConfigurablePasswordEncoder.ARGON2, 4);
+
+        authProvider(encoder).authenticate(new UsernamePasswordAuthenticationToken(email, "123"));
+
+        final String upgraded = userRepository.findByEmail(email).getPassword();
+        assertTrue(upgraded.startsWith("{argon2}"));
+        assertTrue(encoder.matches("123", upgraded));
+        assertFalse(encoder.upgradeEncoding(upgraded));
+    }
+
+    @Test
+    public void givenBcryptHash_whenCostIsRaised_thenHashIsUpgradedWithoutPrefix() {
+        final String email = createUser(ConfigurablePasswordEncoder.bcrypt(4).encode("123"));
+        final ConfigurablePasswordEncoder encoder = encoder(ConfigurablePasswordEncoder.BCRYPT, 5);
+
+        authProvider(encoder).authenticate(new UsernamePasswordAuthenticationToken(email, "123"));
+
+        final String upgraded = userRepository.findByEmail(email).getPassword();
+        assertTrue(upgraded.startsWith("$2a$05$"));
+        assertFalse(encoder.upgradeEncoding(upgraded));
+    }
+
+    @Test
+    public void givenCurrentHash_whenLoggingIn_thenHashIsKept() {
+        final ConfigurablePasswordEncoder encoder = encoder(ConfigurablePasswordEncoder.BCRYPT, 4);
+        final String hash = encoder.encode("123");
+        final String email = createUser(hash);
+
+        authProvider(encoder).authenticate(new UsernamePasswordAuthenticationToken(email, "123"));
+
+        assertEquals(hash, userRepository.findByEmail(email).getPassword());
+    }
+
+    //
+
+    private ConfigurablePasswordEncoder encoder(final String idForEncode, final int bcryptStrength) {
+        return new ConfigurablePasswordEncoder(idForEncode, ConfigurablePasswordEncoder.bcrypt(bcryptStrength),
+                ConfigurablePasswordEncoder.argon2(16, 32, 1, 1024, 1), ConfigurablePasswordEncoder.pbkdf2(16, 1000));
+    }
+
+    private DaoAuthenticationProvider authProvider(final ConfigurablePasswordEncoder encoder) {
+        final CaffeineUserCache userCache = new CaffeineUserCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        final MyUserDetailsService userDetailsService = new MyUserDetailsService(userRepository, new LoginAttemptService(new MockHttpServletRequest(), new ClientIpResolver(List.of(), "X-Forwarded-For"), new InMemoryLoginAttemptStore(Duration.ofDays(1), 1024, new SimpleMeterRegistry()), LoginAttemptService.MAX_ATTEMPT, 100, 24, 64, List.of(), new SimpleMeterRegistry()), userCache,
+                new RoleAuthorityRegistry(roleRepository, userCache), new LoginUserContext(userRepository), eventPublisher);
+        final DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider(encoder);
+        authProvider.setUserDetailsService(userDetailsService);
+        authProvider.setUserDetailsPasswordService(userDetailsService);
+        return authProvider;
+    }
+
+    private String createUser(final String passwordHash) {
+        final User user = new User();
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setPassword(passwordHash);
+        user.setEmail(UUID.randomUUID() + "@doe.com");
+        user.setEnabled(true);
+        userRepository.save(user);
+
+        entityManager.flush();
+        entityManager.clear();
+        return user.getEmail();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.PasswordHashingGate;
+import com.chensoul.web.error.TooManyRequestsException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = PasswordHashingGateIntegrationTest.GateConfig.class, properties = {"security.password.gate.permits=1", "security.password.gate.max-queue=1", "security.password.gate.max-wait=100ms",
+        "security.password.gate.retry-after=2s"})
+public class PasswordHashingGateIntegrationTest {
+
+    private final PasswordHashingGate gate;
+
+    private final MeterRegistry meterRegistry;
+
+    @Test
+    public void givenFreeSlot_whenHashing_thenRunsImmediately() {
+        assertEquals("hash", gate.execute(() -> "hash"));
+        assertEquals(0, meterRegistry.get("security.password.gate.active").gauge().value());
+    }
+
+    @Test
+    public void givenSaturatedGate_whenHashing_thenRejectedWithRetryAfter() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> busy = CompletableFuture.supplyAsync(() -> gate.execute(() -> {
+            started.countDown();
+            await(release);
+            return "done";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final TooManyRequestsException e = assertThrows(TooManyRequestsException.class, () -> gate.execute(() -> "queued"));
+        assertEquals(2, e.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("security.password.gate.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("done", busy.get(5, TimeUnit.SECONDS));
+        assertEquals("free", gate.execute(() -> "free"));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Configuration
+    @Import(PasswordHashingGate.class)
+    static class GateConfig {
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.web.error.TooManyRequestsException;
+import com.chensoul.web.ratelimit.RateLimitInterceptor;
+import com.chensoul.web.ratelimit.RateLimited;
+import com.chensoul.web.ratelimit.TokenBucketLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+public class RateLimitIntegrationTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    public void givenFullBucket_whenDrained_thenRefusedUntilATokenRefills() {
+        final TokenBucketLimiter limiter = new TokenBucketLimiter(3, Duration.ofMinutes(3), 16, nanos::get);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire(1));
+        }
+        assertEquals(Duration.ofMinutes(1).toNanos(), limiter.tryAcquire(1));
+        assertEquals(0, limiter.tryAcquire(2));
+
+        nanos.addAndGet(Duration.ofSeconds(59).toNanos());
+        assertEquals(Duration.ofSeconds(1).toNanos(), limiter.tryAcquire(1));
+        nanos.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(0, limiter.tryAcquire(1));
+        assertTrue(limiter.tryAcquire(1) > 0);
+    }
+
+    @Test
+    public void givenConcurrentRequests_whenAcquiring_thenNeverMoreThanCapacity() throws InterruptedException {
+        final TokenBucketLimiter limiter = new TokenBucketLimiter(50, Duration.ofHours(1), 16);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger granted = new AtomicInteger();
+        for (int i = 0; i < 400; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (limiter.tryAcquire(7) == 0) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(50, granted.get());
+    }
+
+    @Test
+    public void givenAnnotatedEndpoint_whenOneEmailIsHammeredFromManyAddresses_thenRefusedWithRetryAfter() throws Exception {
+        final RateLimitInterceptor interceptor = interceptor(new MockEnvironment());
+        final HandlerMethod handler = handler("resetPassword");
+
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(interceptor.preHandle(request("198.51.100." + i, "Victim@example.com"), new MockHttpServletResponse(), handler));
+        }
+        final TooManyRequestsException e = assertThrows(TooManyRequestsException.class,
+                () -> interceptor.preHandle(request("198.51.100.9", " victim@example.com"), new MockHttpServletResponse(), handler));
+        assertEquals(1200, e.getRetryAfterSeconds());
+
+        assertTrue(interceptor.preHandle(request("198.51.100.9", "other@example.com"), new MockHttpServletResponse(), handler));
+    }
+
+    @Test
+    public void givenOneAddress_whenCyclingEmails_thenRefusedByTheAddressLimit() throws Exception {
+        final MockEnvironment env = new MockEnvironment().withProperty("security.rate-limit.test-reset.capacity", "2");
+        final RateLimitInterceptor interceptor = interceptor(env);
+        final HandlerMethod handler = handler("resetPassword");
+
+        assertTrue(interceptor.preHandle(request("203.0.113.1", "a@example.com"), new MockHttpServletResponse(), handler));
+        assertTrue(interceptor.preHandle(request("203.0.113.1", "b@example.com"), new MockHttpServletResponse(), handler));
+        assertThrows(TooManyRequestsException.class,
+                () -> interceptor.preHandle(request("203.0.113.1", "c@example.com"), new MockHttpServletResponse(), handler));
+    }
+
+    @Test
+    public void givenEndpointWithoutAnnotation_whenCalled_thenNeverLimited() throws Exception {
+        final RateLimitInterceptor interceptor = interceptor(new MockEnvironment());
+        final HandlerMethod handler = handler("unlimited");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(interceptor.preHandle(request("203.0.113.1", "a@example.com"), new MockHttpServletResponse(), handler));
+        }
+    }
+
+    //
+
+    private static RateLimitInterceptor interceptor(final MockEnvironment env) {
+        return new RateLimitInterceptor(new ClientIpResolver(List.of(), "X-Forwarded-For"), env, new SimpleMeterRegistry(), true, 1024);
+    }
+
+    private static HandlerMethod handler(final String name) throws NoSuchMethodException {
+        return new HandlerMethod(new Endpoints(), Endpoints.class.getMethod(name));
+    }
+
+    private static MockHttpServletRequest request(final String remoteAddr, final String email) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/user/resetPassword");
+        request.setRemoteAddr(remoteAddr);
+        request.setParameter("email", email);
+        return request;
+    }
+
+    public static class Endpoints {
+
+        @RateLimited(value = "test-reset", capacity = 10, period = "1h", parameter = "email", parameterCapacity = 3)
+        public void resetPassword() {
+        }
+
+        public void unlimited() {
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.service.ReloadableDatabaseReader;
+import com.maxmind.geoip2.exception.GeoIp2Exception;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+
+public class ReloadableDatabaseReaderIntegrationTest {
+
+    private static final ClassPathResource COUNTRY = new ClassPathResource("maxmind/GeoLite2-Country.mmdb");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void givenFile_whenOpened_thenLookupsUseIt() throws Exception {
+        try (ReloadableDatabaseReader reader = new ReloadableDatabaseReader("country", copy(dir.resolve("country.mmdb")), null, 64)) {
+            assertTrue(reader.isAvailable());
+            assertEquals("Germany", country(reader, "88.198.50.103"));
+            assertFalse(reader.reloadIfChanged());
+        }
+    }
+
+    @Test
+    public void givenNoFile_whenOpened_thenClasspathCopyIsUsed() throws Exception {
+        try (ReloadableDatabaseReader reader = new ReloadableDatabaseReader("country", dir.resolve("missing.mmdb"), COUNTRY, 64)) {
+            assertEquals("Spain", country(reader, "81.47.169.143"));
+
+            // the file appearing later is picked up by the next check
+            copy(dir.resolve("missing.mmdb"));
+            assertTrue(reader.reloadIfChanged());
+            assertEquals("Spain", country(reader, "81.47.169.143"));
+        }
+    }
+
+    @Test
+    public void givenNoDatabase_whenLookingUp_thenNothingIsFound() throws Exception {
+        try (ReloadableDatabaseReader reader = new ReloadableDatabaseReader("city", dir.resolve("missing.mmdb"), new ClassPathResource("maxmind/missing.mmdb"), 64)) {
+            final InetAddress address = InetAddress.getByName("88.198.50.103");
+            assertFalse(reader.isAvailable());
+            assertTrue(reader.tryCity(address).isEmpty());
+            assertThrows(GeoIp2Exception.class, () -> reader.city(address));
+        }
+    }
+
+    @Test
+    public void givenBrokenReplacement_whenReloading_thenCurrentDatabaseIsKept() throws Exception {
+        final Path file = copy(dir.resolve("country.mmdb"));
+        try (ReloadableDatabaseReader reader = new ReloadableDatabaseReader("country", file, null, 64)) {
+            final Path broken = dir.resolve("broken.mmdb");
+            Files.write(broken, new byte[]{1, 2, 3});
+            Files.move(broken, file, StandardCopyOption.REPLACE_EXISTING);
+
+            assertFalse(reader.reloadIfChanged());
+            assertEquals("Germany", country(reader, "88.198.50.103"));
+        }
+    }
+
+    @Test
+    public void givenConcurrentLookups_whenFileIsReplacedRepeatedly_thenNoLookupFails() throws Exception {
+        final Path file = copy(dir.resolve("country.mmdb"));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        try (ReloadableDatabaseReader reader = new ReloadableDatabaseReader("country", file, null, 64)) {
+            final List<Future<Integer>> lookups = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                lookups.add(executor.submit(() -> {
+                    int count = 0;
+                    while (running.get()) {
+                        assertEquals("Germany", country(reader, "88.198.50.103"));
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+
+            for (int i = 1; i <= 20; i++) {
+                final Path next = copy(dir.resolve("next.mmdb"));
+                Files.setLastModifiedTime(next, FileTime.fromMillis(System.currentTimeMillis() + i * 1000L));
+                Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                assertTrue(reader.reloadIfChanged());
+            }
+
+            running.set(false);
+            for (final Future<Integer> lookup : lookups) {
+                assertTrue(lookup.get(10, TimeUnit.SECONDS) > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // UTIL
+
+    private static String country(final ReloadableDatabaseReader reader, final String ip) throws Exception {
+        return reader.country(InetAddress.getByName(ip)).getCountry().getName();
+    }
+
+    private static Path copy(final Path target) throws Exception {
+        try (InputStream in = COUNTRY.getInputStream()) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.persistence.dao.PrivilegeRepository;
+import com.chensoul.persistence.dao.RoleRepository;
+import com.chensoul.persistence.listener.AuthorityCollectionChangeListener;
+import com.chensoul.persistence.model.Privilege;
+import com.chensoul.persistence.model.Role;
+import com.chensoul.security.CaffeineUserCache;
+import com.chensoul.security.RoleAuthorityRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = {TestDbConfig.class, RoleAuthorityRegistry.class, CaffeineUserCache.class, AuthorityCollectionChangeListener.class})
+public class RoleAuthorityRegistryIntegrationTest {
+
+    private final RoleAuthorityRegistry roleAuthorityRegistry;
+
+    @SpyBean
+    private RoleRepository roleRepository;
+
+    private final PrivilegeRepository privilegeRepository;
+
+    @Test
+    public void givenRole_whenResolvingTwice_thenSameAuthoritiesAreShared() {
+        final Role role = createRole(UUID.randomUUID().toString());
+
+        final Set<GrantedAuthority> first = roleAuthorityRegistry.getAuthorities(role.getName());
+        final Set<GrantedAuthority> second = roleAuthorityRegistry.getAuthorities(role.getName());
+
+        assertSame(first, second);
+        assertEquals(Set.of(role.getName(), "REGISTRY_READ"), names(first));
+    }
+
+    @Test
+    public void givenReadyApplication_whenResolving_thenNothingIsLoaded() {
+        clearInvocations(roleRepository);
+
+        roleAuthorityRegistry.getAuthorities("ROLE_ANY");
+
+        verify(roleRepository, never()).findAllWithPrivileges();
+    }
+
+    @Test
+    public void givenCommittedChange_whenResolving_thenRegistryWasRebuiltAlready() {
+        clearInvocations(roleRepository);
+        final Role role = createRole(UUID.randomUUID().toString());
+        verify(roleRepository, atLeastOnce()).findAllWithPrivileges();
+
+        clearInvocations(roleRepository);
+        assertEquals(Set.of(role.getName(), "REGISTRY_READ"), names(roleAuthorityRegistry.getAuthorities(role.getName())));
+        verify(roleRepository, never()).findAllWithPrivileges();
+    }
+
+    @Test
+    public void givenResolvedRole_whenPrivilegeAdded_thenAuthoritiesAreRebuilt() {
+        // an existing privilege, so only the collection of the role changes
+        final Privilege other = findOrCreate("REGISTRY_OTHER");
+        final Long roleId = createRole(UUID.randomUUID().toString()).getId();
+        final Role role = roleRepository.findAllWithPrivileges().stream().filter(r -> r.getId().equals(roleId)).findFirst().get();
+        roleAuthorityRegistry.getAuthorities(role.getName());
+
+        final ArrayList<Privilege> privileges = new ArrayList<>(role.getPrivileges());
+        privileges.add(other);
+        role.setPrivileges(privileges);
+        roleRepository.save(role);
+
+        assertEquals(Set.of(role.getName(), "REGISTRY_READ", "REGISTRY_OTHER"), names(roleAuthorityRegistry.getAuthorities(role.getName())));
+    }
+
+    @Test
+    public void givenResolvedRole_whenPrivilegeRemoved_thenAuthoritiesAreRebuilt() {
+        final Long roleId = createRole(UUID.randomUUID().toString()).getId();
+        final Role role = roleRepository.findAllWithPrivileges().stream().filter(r -> r.getId().equals(roleId)).findFirst().get();
+        roleAuthorityRegistry.getAuthorities(role.getName());
+
+        role.setPrivileges(new ArrayList<>());
+        roleRepository.save(role);
+
+        assertEquals(Set.of(role.getName()), names(roleAuthorityRegistry.getAuthorities(role.getName())));
+    }
+
+    //
+
+    private Role createRole(final String name) {
+        final Privilege read = findOrCreate("REGISTRY_READ");
+        final Role role = new Role(name);
+        role.setPrivileges(Arrays.asList(read));
+        return roleRepository.save(role);
+    }
+
+    private Privilege findOrCreate(final String name) {
+        final Privilege privilege = privilegeRepository.findByName(name);
+        return privilege != null ? privilege : privilegeRepository.save(new Privilege(name));
+    }
+
+    private Set<String> names(final Set<GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+    }
+}
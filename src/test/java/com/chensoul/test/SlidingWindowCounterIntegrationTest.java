@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.attempt.SlidingWindowCounter;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class SlidingWindowCounterIntegrationTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    private final AtomicLong now = new AtomicLong(1000 * HOUR);
+
+    @Test
+    public void givenFailuresInWindow_whenCounted_thenAllAreSeen() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofHours(1), now::get);
+        final long key = SlidingWindowCounter.hash("203.0.113.7");
+
+        for (int i = 0; i < 9; i++) {
+            counter.increment(key);
+        }
+
+        assertEquals(10, counter.increment(key));
+        assertEquals(10, counter.get(key));
+        assertEquals(0, counter.get(SlidingWindowCounter.hash("203.0.113.8")));
+    }
+
+    @Test
+    public void givenFailuresInPreviousWindow_whenTimePasses_thenTheyFadeOut() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofHours(1), now::get);
+        final long key = SlidingWindowCounter.hash("203.0.113.7");
+        IntStream.range(0, 10).forEach(i -> counter.increment(key));
+
+        now.addAndGet(HOUR + HOUR / 4);
+        assertEquals(7, counter.get(key));
+
+        now.addAndGet(HOUR / 2);
+        assertEquals(2, counter.get(key));
+
+        now.addAndGet(HOUR);
+        assertEquals(0, counter.get(key));
+    }
+
+    @Test
+    public void givenReset_whenCounted_thenStartsOver() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofHours(1), now::get);
+        final long key = SlidingWindowCounter.hash("alice@test.com");
+        IntStream.range(0, 5).forEach(i -> counter.increment(key));
+
+        counter.reset(key);
+
+        assertEquals(0, counter.get(key));
+        assertEquals(1, counter.increment(key));
+    }
+
+    @Test
+    public void givenMoreKeysThanCapacity_whenCounted_thenTableStaysBoundedAndKeepsHeavyHitters() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofHours(1), now::get);
+        final long attacker = SlidingWindowCounter.hash("198.51.100.1");
+        IntStream.range(0, 50).forEach(i -> counter.increment(attacker));
+
+        for (int i = 0; i < 100_000; i++) {
+            counter.increment(SlidingWindowCounter.hash("10.0." + (i >> 8) + "." + (i & 0xff)));
+        }
+
+        assertEquals(1024, counter.capacity());
+        assertTrue(counter.size() <= counter.capacity());
+        assertTrue(counter.evictions() > 0);
+        assertEquals(50, counter.get(attacker));
+    }
+
+    @Test
+    public void givenExpiredKeys_whenNewKeysArrive_thenSlotsAreReusedWithoutEviction() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofHours(1), now::get);
+        IntStream.range(0, 400).forEach(i -> counter.increment(SlidingWindowCounter.hash("old-" + i)));
+        final int occupied = counter.size();
+        final long evicted = counter.evictions();
+
+        now.addAndGet(2 * HOUR);
+        IntStream.range(0, 400).forEach(i -> counter.increment(SlidingWindowCounter.hash("new-" + i)));
+
+        assertTrue(counter.size() - occupied < 400);
+        assertEquals(evicted, counter.evictions());
+    }
+
+    @Test
+    public void givenConcurrentFailures_whenCounted_thenNoneAreLost() {
+        final SlidingWindowCounter counter = new SlidingWindowCounter(1024, Duration.ofHours(1), now::get);
+        final long key = SlidingWindowCounter.hash("203.0.113.7");
+
+        CompletableFuture.allOf(IntStream.range(0, 8)
+                .mapToObj(t -> CompletableFuture.runAsync(() -> IntStream.range(0, 10_000).forEach(i -> counter.increment(key))))
+                .toArray(CompletableFuture[]::new)).join();
+
+        assertEquals(80_000, counter.get(key));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.attempt.InMemoryLoginAttemptStore;
+import com.chensoul.security.attempt.IpAddresses;
+import com.chensoul.security.attempt.IpRadixTrie;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class SubnetBlockingIntegrationTest {
+
+    private final LoginAttemptService loginAttemptService = new LoginAttemptService(new MockHttpServletRequest(), new ClientIpResolver(List.of(), "X-Forwarded-For"), new InMemoryLoginAttemptStore(Duration.ofDays(1), 1024, new SimpleMeterRegistry()), LoginAttemptService.MAX_ATTEMPT,
+            20, 24, 64, List.of("10.0.0.0/8", "2001:db8:ffff::/48"), new SimpleMeterRegistry());
+
+    @Test
+    public void givenFailuresSpreadOverOneSlash24_whenSubnetLimitReached_thenWholeSubnetIsBlocked() {
+        for (int i = 1; i <= 20; i++) {
+            loginAttemptService.loginFailed("198.51.100." + i);
+        }
+
+        assertTrue(isBlocked("198.51.100.200"));
+        assertTrue(isBlocked("::ffff:198.51.100.201"));
+        assertFalse(isBlocked("198.51.101.1"));
+    }
+
+    @Test
+    public void givenFailuresSpreadOverOneSlash64_whenSubnetLimitReached_thenWholeSubnetIsBlocked() {
+        for (int i = 1; i <= 20; i++) {
+            loginAttemptService.loginFailed("2001:db8:1:2::" + Integer.toHexString(i));
+        }
+
+        assertTrue(isBlocked("2001:db8:1:2:ffff::1"));
+        assertFalse(isBlocked("2001:db8:1:3::1"));
+    }
+
+    @Test
+    public void givenSingleAddress_whenAddressLimitReached_thenOnlyItIsBlocked() {
+        for (int i = 0; i < LoginAttemptService.MAX_ATTEMPT; i++) {
+            loginAttemptService.loginFailed("203.0.113.7");
+        }
+
+        assertTrue(isBlocked("203.0.113.7"));
+        assertFalse(isBlocked("203.0.113.8"));
+    }
+
+    @Test
+    public void givenAllowListedProxy_whenFailing_thenNeverBlocked() {
+        for (int i = 0; i < 50; i++) {
+            loginAttemptService.loginFailed("10.1.2.3");
+            loginAttemptService.loginFailed("2001:db8:ffff:1::1");
+        }
+
+        assertFalse(isBlocked("10.1.2.3"));
+        assertFalse(isBlocked("2001:db8:ffff:1::1"));
+    }
+
+    @Test
+    public void givenLiterals_whenParsed_thenRawBytesWithoutDns() {
+        assertArrayEquals(new byte[]{(byte) 192, 0, 2, 1}, IpAddresses.parse("192.0.2.1"));
+        assertArrayEquals(new byte[]{(byte) 192, 0, 2, 1}, IpAddresses.parse("::ffff:192.0.2.1"));
+        assertEquals(16, IpAddresses.parse("2001:db8::1").length);
+        assertEquals(16, IpAddresses.parse("::").length);
+        assertEquals(1, IpAddresses.parse("::1")[15]);
+
+        assertNull(IpAddresses.parse("example.com"));
+        assertNull(IpAddresses.parse("192.0.2.256"));
+        assertNull(IpAddresses.parse("192.0.2.01"));
+        assertNull(IpAddresses.parse("192.0.2"));
+        assertNull(IpAddresses.parse("1::2::3"));
+        assertNull(IpAddresses.parse("1:2:3:4:5:6:7:8:9"));
+        assertNull(IpAddresses.parse("fe80::1%eth0"));
+    }
+
+    @Test
+    public void givenCidrBlocks_whenLookingUp_thenLongestMatchingPrefixIsReturned() {
+        final IpRadixTrie trie = IpRadixTrie.of(List.of("10.0.0.0/8", "10.1.0.0/16", "192.0.2.7", "2001:db8::/32"));
+
+        assertEquals(16, trie.longestMatch(IpAddresses.parse("10.1.200.3")));
+        assertEquals(8, trie.longestMatch(IpAddresses.parse("10.2.0.1")));
+        assertEquals(32, trie.longestMatch(IpAddresses.parse("192.0.2.7")));
+        assertEquals(-1, trie.longestMatch(IpAddresses.parse("192.0.2.8")));
+        assertEquals(32, trie.longestMatch(IpAddresses.parse("2001:db8:abcd::1")));
+        assertEquals(-1, trie.longestMatch(IpAddresses.parse("2001:db9::1")));
+    }
+
+    //
+
+    private boolean isBlocked(final String ip) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(ip);
+        return loginAttemptService.isBlocked(request);
+    }
+}
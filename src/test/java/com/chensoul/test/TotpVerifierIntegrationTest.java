@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.persistence.model.User;
+import com.chensoul.security.google2fa.TotpVerifier;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.jboss.aerogear.security.otp.Totp;
+import org.jboss.aerogear.security.otp.api.Base32;
+import org.junit.jupiter.api.Test;
+
+public class TotpVerifierIntegrationTest {
+
+    private static final long STEP = 57_000_000L;
+
+    private final TotpVerifier verifier = new TotpVerifier(100, Clock.fixed(Instant.ofEpochSecond(STEP * 30 + 7), ZoneOffset.UTC));
+
+    @Test
+    public void givenCurrentCode_whenVerified_thenAcceptedOnlyOnce() {
+        final User user = user();
+
+        assertTrue(verifier.verify(user, code(user, STEP)));
+        assertFalse(verifier.verify(user, code(user, STEP)));
+    }
+
+    @Test
+    public void givenAdjacentSteps_whenVerified_thenOneStepOfDriftIsAccepted() {
+        final User behind = user();
+        assertTrue(verifier.verify(behind, code(behind, STEP - 1)));
+
+        final User user = user();
+        assertTrue(verifier.verify(user, code(user, STEP + 1)));
+        assertFalse(verifier.verify(user, code(user, STEP)));
+    }
+
+    @Test
+    public void givenCodeOutsideWindow_whenVerified_thenRejected() {
+        final User user = user();
+
+        assertFalse(verifier.verify(user, code(user, STEP - 2)));
+        assertFalse(verifier.verify(user, code(user, STEP + 2)));
+    }
+
+    @Test
+    public void givenMalformedCode_whenVerified_thenRejected() {
+        final User user = user();
+
+        assertFalse(verifier.verify(user, null));
+        assertFalse(verifier.verify(user, "12345"));
+        assertFalse(verifier.verify(user, "12a456"));
+        assertFalse(verifier.verify(user, "1234567"));
+    }
+
+    @Test
+    public void givenMatchedCode_whenPasswordFailsBeforeConsuming_thenCodeStillUsable() {
+        final User user = user();
+        final String code = code(user, STEP);
+
+        assertTrue(verifier.match(user, code) >= 0);
+        assertTrue(verifier.verify(user, code));
+    }
+
+    @Test
+    public void givenNewSecret_whenOldCodeVerified_thenRejected() {
+        final User user = user();
+        final String oldCode = code(user, STEP);
+        assertTrue(verifier.match(user, oldCode) >= 0);
+
+        user.setSecret(Base32.random());
+
+        assertFalse(verifier.verify(user, oldCode));
+        assertTrue(verifier.verify(user, code(user, STEP)));
+    }
+
+    //
+
+    private static User user() {
+        final User user = new User();
+        user.setEmail(Base32.random() + "@test.com");
+        user.setUsing2FA(true);
+        return user;
+    }
+
+    private static String code(final User user, final long step) {
+        return new Totp(user.getSecret(), new org.jboss.aerogear.security.otp.api.Clock() {
+            @Override
+            public long getCurrentInterval() {
+                return step;
+            }
+        }).now();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.service.UserAgentService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import ua_parser.Parser;
+
+public class UserAgentServiceIntegrationTest {
+
+    private static final String CHROME_MAC = "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_14_0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/71.0.3578.98 Safari/537.36";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger parsersCreated = new AtomicInteger();
+
+    private Parser parser;
+
+    private final UserAgentService userAgentService = new UserAgentService(() -> {
+        if (parser == null) {
+            parsersCreated.incrementAndGet();
+            parser = spy(new Parser());
+        }
+        return parser;
+    }, 100, 512, meterRegistry);
+
+    @Test
+    public void givenSameUserAgent_whenDescribedRepeatedly_thenParsedOnce() {
+        assertEquals(0, parsersCreated.get());
+
+        assertEquals("Chrome 71.0 - Mac OS X 10.14", userAgentService.getDeviceDetails(CHROME_MAC));
+        assertEquals("Chrome 71.0 - Mac OS X 10.14", userAgentService.getDeviceDetails(CHROME_MAC));
+        assertEquals("Chrome 71.0 - Mac OS X 10.14", userAgentService.getDeviceDetails(CHROME_MAC));
+
+        assertEquals(1, parsersCreated.get());
+        verify(parser, times(1)).parse(anyString());
+        assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "userAgent").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    public void givenOverlongUserAgent_whenDescribed_thenOnlyItsPrefixIsParsed() {
+        final String junk = CHROME_MAC + " " + "x".repeat(8000);
+
+        assertEquals("Chrome 71.0 - Mac OS X 10.14", userAgentService.getDeviceDetails(junk));
+        assertEquals("Chrome 71.0 - Mac OS X 10.14", userAgentService.getDeviceDetails(junk + "y"));
+
+        verify(parser, times(1)).parse(argThat(userAgent -> userAgent.length() == 512));
+        verify(parser, times(1)).parse(anyString());
+    }
+}
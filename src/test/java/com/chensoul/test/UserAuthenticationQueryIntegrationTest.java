@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.persistence.dao.PrivilegeRepository;
+import com.chensoul.persistence.dao.RoleRepository;
+import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.persistence.model.Privilege;
+import com.chensoul.persistence.model.Role;
+import com.chensoul.persistence.model.User;
+import com.chensoul.security.CaffeineUserCache;
+import com.chensoul.security.ClientIpResolver;
+import com.chensoul.security.LoginAttemptService;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.MyUserDetailsService;
+import com.chensoul.security.RoleAuthorityRegistry;
+import com.chensoul.security.attempt.InMemoryLoginAttemptStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Transactional;
+
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = TestDbConfig.class, properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional
+public class UserAuthenticationQueryIntegrationTest {
+
+    private final UserRepository userRepository;
+
+    private final RoleRepository roleRepository;
+
+    private final PrivilegeRepository privilegeRepository;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final EntityManager entityManager;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Test
+    public void givenUserWithSeveralRoles_whenLoadingUserDetails_thenSingleStatementIsIssued() {
+        final String email = createUserWithTwoRoles();
+        final UserDetailsService userDetailsService = userDetailsService();
+        final Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        final UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(email, userDetails.getUsername());
+        final Set<String> authorities = userDetails.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+        assertEquals(Set.of("TEST_ROLE_A", "TEST_ROLE_B", "TEST_READ", "TEST_WRITE"), authorities);
+    }
+
+    @Test
+    public void givenCachedUser_whenLoadingUserDetailsAgain_thenNoStatementIsIssued() {
+        final String email = createUserWithTwoRoles();
+        final UserDetailsService userDetailsService = userDetailsService();
+        userDetailsService.loadUserByUsername(email);
+        final Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        userDetailsService.loadUserByUsername(email);
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    //
+
+    private UserDetailsService userDetailsService() {
+        final CaffeineUserCache userCache = new CaffeineUserCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+        final RoleAuthorityRegistry roleAuthorityRegistry = new RoleAuthorityRegistry(roleRepository, userCache);
+        // resolved once per role change, not per login
+        roleAuthorityRegistry.getAuthorities("TEST_ROLE_A");
+        return new MyUserDetailsService(userRepository, new LoginAttemptService(new MockHttpServletRequest(), new ClientIpResolver(List.of(), "X-Forwarded-For"), new InMemoryLoginAttemptStore(Duration.ofDays(1), 1024, new SimpleMeterRegistry()), LoginAttemptService.MAX_ATTEMPT, 100, 24, 64, List.of(), new SimpleMeterRegistry()), userCache, roleAuthorityRegistry,
+                new LoginUserContext(userRepository), eventPublisher);
+    }
+
+    private String createUserWithTwoRoles() {
+        final Privilege read = privilegeRepository.save(new Privilege("TEST_READ"));
+        final Privilege write = privilegeRepository.save(new Privilege("TEST_WRITE"));
+
+        final Role roleA = new Role("TEST_ROLE_A");
+        roleA.setPrivileges(Arrays.asList(read, write));
+        final Role roleB = new Role("TEST_ROLE_B");
+        roleB.setPrivileges(Arrays.asList(read));
+
+        final User user = new User();
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setPassword(passwordEncoder.encode("123"));
+        user.setEmail(UUID.randomUUID() + "@doe.com");
+        user.setRoles(Arrays.asList(roleRepository.save(roleA), roleRepository.save(roleB)));
+        user.setEnabled(true);
+        userRepository.save(user);
+
+        entityManager.flush();
+        entityManager.clear();
+        return user.getEmail();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2023-2024 chensoul.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.chensoul.test;
+
+import com.chensoul.config.TestDbConfig;
+import com.chensoul.persistence.dao.UserRepository;
+import com.chensoul.persistence.dao.VerificationTokenRepository;
+import com.chensoul.persistence.model.User;
+import com.chensoul.persistence.model.VerificationToken;
+import com.chensoul.security.CaffeineUserCache;
+import com.chensoul.security.LoginUserContext;
+import com.chensoul.security.location.KnownLocationCache;
+import com.chensoul.service.GeoIpService;
+import com.chensoul.service.UserService;
+import java.util.List;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * Every change to a user that a cached principal reflects must evict it, and only it, once committed.
+ */
+@RequiredArgsConstructor
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(classes = {TestDbConfig.class, CaffeineUserCache.class, UserService.class})
+public class UserCacheEvictionIntegrationTest {
+
+    private final UserService userService;
+
+    private final UserRepository userRepository;
+
+    private final VerificationTokenRepository tokenRepository;
+
+    private final CaffeineUserCache userCache;
+
+    @MockBean
+    private SessionRegistry sessionRegistry;
+
+    @MockBean
+    private GeoIpService geoIpService;
+
+    @MockBean
+    private LoginUserContext loginUserContext;
+
+    @MockBean
+    private KnownLocationCache knownLocationCache;
+
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        user = new User();
+        user.setFirstName("Cache");
+        user.setLastName("Test");
+        user.setEmail(UUID.randomUUID() + "@cache.test");
+        user.setPassword("secret");
+        user.setEnabled(false);
+        user = userRepository.save(user);
+
+        userCache.removeAllUsersFromCache();
+        userCache.putUserInCache(principal(user.getEmail()));
+        userCache.putUserInCache(principal("other@cache.test"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void givenCachedUser_whenPasswordChanged_thenEvicted() {
+        userService.changeUserPassword(user, "changed");
+
+        assertEvicted();
+    }
+
+    @Test
+    public void givenCachedUser_whenTwoFactorToggled_thenEvicted() {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null, List.of()));
+
+        userService.updateUser2FA(true);
+
+        assertEvicted();
+    }
+
+    @Test
+    public void givenCachedUser_whenDeleted_thenEvicted() {
+        userService.deleteUser(user);
+
+        assertEvicted();
+    }
+
+    @Test
+    public void givenCachedUser_whenVerified_thenEvicted() {
+        final String token = UUID.randomUUID().toString();
+        tokenRepository.save(new VerificationToken(token, user));
+
+        assertEquals(UserService.TOKEN_VALID, userService.validateVerificationToken(token));
+
+        assertEvicted();
+        tokenRepository.delete(tokenRepository.findByToken(token));
+    }
+
+    // UTIL
+
+    private void assertEvicted() {
+        assertNull(userCache.getUserFromCache(user.getEmail()));
+        assertNotNull(userCache.getUserFromCache("other@cache.test"));
+    }
+
+    private static UserDetails principal(final String email) {
+        return new org.springframework.security.core.userdetails.User(email, "secret", List.of(new SimpleGrantedAuthority("READ_PRIVILEGE")));
+    }
+}